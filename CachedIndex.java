@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results of the most recently used searches in front of another
+ * index, so popular queries are not searched again every time. Each cached
+ * search remembers the generation of the index it was found in, and is searched
+ * again once the index has changed. Once the cache is full, the least recently
+ * used search is dropped.
+ *
+ * Callers get their own copy of the cached list of results, so they may sort or
+ * reverse it, but the results in it are shared.
+ *
+ * This class is thread-safe if the index it is in front of is.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class CachedIndex implements SearchableIndex {
+
+	/** The default number of searches to keep. */
+	public static final int DEFAULT = 1000;
+
+	/** The index to search when a search is not cached. */
+	private final SearchableIndex index;
+
+	/** The cached searches, from least to most recently used. */
+	private final LinkedHashMap<Key, Entry> cache;
+
+	/** The number of searches answered from the cache. */
+	private final AtomicLong hits;
+
+	/** The number of searches passed on to the index. */
+	private final AtomicLong misses;
+
+	/**
+	 * initializes a cache with the default size
+	 *
+	 * @param index the index to search when a search is not cached
+	 */
+	public CachedIndex(SearchableIndex index) {
+		this(index, DEFAULT);
+	}
+
+	/**
+	 * initializes a cache
+	 *
+	 * @param index the index to search when a search is not cached
+	 * @param size  the number of searches to keep
+	 */
+	public CachedIndex(SearchableIndex index, int size) {
+		this.index = index;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of searches answered from the cache
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of searches passed on to the index
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of searches in the cache
+	 *
+	 * @return int
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	@Override
+	public long generation() {
+		return index.generation();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> exactSearch(Set<String> queries) {
+		return get(new Key(SearchType.EXACT, queries, SearchType.ALL)).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> partialSearch(Set<String> queries) {
+		return get(new Key(SearchType.PARTIAL, queries, SearchType.ALL)).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> andSearch(Set<String> queries, boolean exact) {
+		return get(new Key(exact ? SearchType.AND_EXACT : SearchType.AND_PARTIAL, queries, SearchType.ALL)).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> phraseSearch(List<String> phrase) {
+		return get(new Key(SearchType.PHRASE, phrase)).getResults();
+	}
+
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		return get(new Key(SearchType.EXACT, queries, k));
+	}
+
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		return get(new Key(SearchType.PARTIAL, queries, k));
+	}
+
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		return get(new Key(exact ? SearchType.PRUNED_EXACT : SearchType.PRUNED_PARTIAL, queries, k));
+	}
+
+	/**
+	 * Returns a copy of the cached results for the search, searching the index
+	 * first if the search is not cached or the index has changed since.
+	 *
+	 * @param key the search to look up
+	 * @return a copy of the results
+	 */
+	private TopResults get(Key key) {
+		// read the generation first, so results found afterwards are at least as new
+		long generation = index.generation();
+		Entry entry;
+
+		synchronized (cache) {
+			entry = cache.get(key);
+		}
+
+		if (entry != null && entry.generation == generation) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			entry = new Entry(generation, key.search(index));
+
+			synchronized (cache) {
+				cache.put(key, entry);
+			}
+		}
+
+		TopResults found = entry.results;
+		return new TopResults(new ArrayList<InvertedIndex.Result>(found.getResults()), found.getTotal(),
+				found.isTotalExact());
+	}
+
+	/**
+	 * A search that can be cached: the kind of search, its words, and how many
+	 * results to keep.
+	 */
+	private static class Key {
+		/** The kind of search. */
+		private final SearchType type;
+
+		/** The words searched for. */
+		private final List<String> words;
+
+		/** The number of results to keep, or {@link SearchType#ALL}. */
+		private final int k;
+
+		/**
+		 * constructor
+		 *
+		 * @param type    the kind of search
+		 * @param queries the words searched for, copied in sorted order
+		 * @param k       the number of results to keep, or {@link SearchType#ALL}
+		 */
+		public Key(SearchType type, Set<String> queries, int k) {
+			this.type = type;
+			this.words = List.copyOf(new TreeSet<String>(queries));
+			this.k = k;
+		}
+
+		/**
+		 * constructor for a search that keeps every result and cares about the
+		 * order of its words
+		 *
+		 * @param type   the kind of search
+		 * @param phrase the words searched for, copied in order
+		 */
+		public Key(SearchType type, List<String> phrase) {
+			this.type = type;
+			this.words = List.copyOf(phrase);
+			this.k = SearchType.ALL;
+		}
+
+		/**
+		 * Runs the search on the index.
+		 *
+		 * @param index the index to search
+		 * @return the results
+		 */
+		public TopResults search(SearchableIndex index) {
+			return type.search(index, words, k);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return k == other.k && type.equals(other.type) && words.equals(other.words);
+		}
+
+		@Override
+		public int hashCode() {
+			return (type.hashCode() * 31 + words.hashCode()) * 31 + k;
+		}
+	}
+
+	/**
+	 * The cached results of a search and the generation of the index they were
+	 * found in.
+	 */
+	private static class Entry {
+		/** The generation of the index the results were found in. */
+		private final long generation;
+
+		/** The results of the search. */
+		private final TopResults results;
+
+		/**
+		 * constructor
+		 *
+		 * @param generation the generation of the index the results were found in
+		 * @param results    the results of the search
+		 */
+		public Entry(long generation, TopResults results) {
+			this.generation = generation;
+			this.results = results;
+		}
+	}
+}
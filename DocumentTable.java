@@ -0,0 +1,274 @@
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Document table used by the inverted index. Gives each location (file path or
+ * url) a dense integer id so the index can store postings by id instead of
+ * repeating the location string for every word. The per document metadata
+ * (word count, snippet, and time crawled) is stored by id as well.
+ *
+ * Removing a location leaves a tombstone on its id instead of renumbering the
+ * other documents, and the location gets a new id if it is added again. The
+ * index skips tombstoned ids until it is compacted, and the table answers as if
+ * they were gone.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class DocumentTable {
+
+	/**
+	 * list of locations where the index of a location is its id
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * map of location to id
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * total words in each document, indexed by id
+	 */
+	private int[] counts;
+
+	/**
+	 * snippet of each document, indexed by id
+	 */
+	private final ArrayList<String> snippets;
+
+	/**
+	 * time each document was crawled, indexed by id
+	 */
+	private final ArrayList<Timestamp> timestamps;
+
+	/**
+	 * ids of the removed documents
+	 */
+	private final BitSet tombstones;
+
+	/**
+	 * number of removed documents
+	 */
+	private int removed;
+
+	/**
+	 * default constructor
+	 */
+	public DocumentTable() {
+		locations = new ArrayList<String>();
+		ids = new HashMap<String, Integer>();
+		counts = new int[16];
+		snippets = new ArrayList<String>();
+		timestamps = new ArrayList<Timestamp>();
+		tombstones = new BitSet();
+		removed = 0;
+	}
+
+	/**
+	 * Initializes a table with the same documents as the other table and its own
+	 * tombstones, so documents can be removed from it without changing the other
+	 * table. Everything else is shared, so documents must not be added to either
+	 * table or have their metadata changed afterwards.
+	 *
+	 * @param other the table to share the documents of
+	 */
+	DocumentTable(DocumentTable other) {
+		locations = other.locations;
+		ids = other.ids;
+		counts = other.counts;
+		snippets = other.snippets;
+		timestamps = other.timestamps;
+		tombstones = (BitSet) other.tombstones.clone();
+		removed = other.removed;
+	}
+
+	/**
+	 * Returns the id of the location, adding the location to the table if it has
+	 * not been seen before.
+	 *
+	 * @param location the path or url of the document
+	 * @return the id of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+
+		if (id == null || tombstones.get(id)) {
+			id = locations.size();
+			ids.put(location, id);
+			locations.add(location);
+			snippets.add(null);
+			timestamps.add(null);
+
+			if (id == counts.length) {
+				counts = Arrays.copyOf(counts, counts.length * 2);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the id of the location.
+	 *
+	 * @param location the path or url of the document
+	 * @return the id of the location or -1 if it is not in the table
+	 */
+	public int getId(String location) {
+		Integer id = ids.get(location);
+		return id == null || tombstones.get(id) ? -1 : id;
+	}
+
+	/**
+	 * Leaves a tombstone on the id of the location. Its count, snippet, and time
+	 * crawled are no longer returned, and are dropped when the index is
+	 * compacted. The location is given a new id if it is added again.
+	 *
+	 * @param location the path or url of the document
+	 * @return the id the location had, or -1 if it is not in the table
+	 */
+	public int remove(String location) {
+		int id = getId(location);
+
+		if (id < 0) {
+			return -1;
+		}
+
+		tombstones.set(id);
+		removed++;
+		return id;
+	}
+
+	/**
+	 * Returns true if the document was removed.
+	 *
+	 * @param id the id of the document
+	 * @return boolean
+	 */
+	public boolean isRemoved(int id) {
+		return tombstones.get(id);
+	}
+
+	/**
+	 * Returns the number of removed documents still in the table.
+	 *
+	 * @return int
+	 */
+	public int removed() {
+		return removed;
+	}
+
+	/**
+	 * Returns the location of the id.
+	 *
+	 * @param id the id of the document
+	 * @return the path or url of the document
+	 */
+	public String getLocation(int id) {
+		return locations.get(id);
+	}
+
+	/**
+	 * Returns the number of documents in the table, including removed ones.
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return locations.size();
+	}
+
+	/**
+	 * Returns the total words stored for the document.
+	 *
+	 * @param id the id of the document
+	 * @return int
+	 */
+	public int getCount(int id) {
+		return tombstones.get(id) ? 0 : counts[id];
+	}
+
+	/**
+	 * Sets the total words stored for the document.
+	 *
+	 * @param id    the id of the document
+	 * @param count the total words in the document
+	 */
+	public void setCount(int id, int count) {
+		counts[id] = count;
+	}
+
+	/**
+	 * Adds one to the total words stored for the document.
+	 *
+	 * @param id the id of the document
+	 */
+	public void incrementCount(int id) {
+		counts[id]++;
+	}
+
+	/**
+	 * Returns the snippet stored for the document.
+	 *
+	 * @param id the id of the document
+	 * @return snippet or null if none is stored
+	 */
+	public String getSnippet(int id) {
+		return tombstones.get(id) ? null : snippets.get(id);
+	}
+
+	/**
+	 * Sets the snippet stored for the document.
+	 *
+	 * @param id      the id of the document
+	 * @param snippet the snippet of the page
+	 */
+	public void setSnippet(int id, String snippet) {
+		snippets.set(id, snippet);
+	}
+
+	/**
+	 * Returns the time the document was crawled.
+	 *
+	 * @param id the id of the document
+	 * @return time crawled or null if none is stored
+	 */
+	public Timestamp getTimestamp(int id) {
+		return tombstones.get(id) ? null : timestamps.get(id);
+	}
+
+	/**
+	 * Sets the time the document was crawled.
+	 *
+	 * @param id        the id of the document
+	 * @param timestamp the time the page was crawled
+	 */
+	public void setTimestamp(int id, Timestamp timestamp) {
+		timestamps.set(id, timestamp);
+	}
+
+	/**
+	 * Returns a map of location to total words for every document with at least
+	 * one word.
+	 *
+	 * @return sorted map of location to count
+	 */
+	public TreeMap<String, Integer> getCounts() {
+		TreeMap<String, Integer> sorted = new TreeMap<String, Integer>();
+
+		for (int id = 0; id < locations.size(); id++) {
+			if (counts[id] > 0 && !tombstones.get(id)) {
+				sorted.put(locations.get(id), counts[id]);
+			}
+		}
+
+		return sorted;
+	}
+}
@@ -2,6 +2,11 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
@@ -78,10 +83,241 @@ public class Driver {
 	private static final String maxFlag = "-max";
 	/**
 	 *
-	 * server key in argument map, value specifies the port number to use
+	 * server key in argument map, value specifies the port number to use. Keeps a
+	 * -cache of recent searches, and builds a -segmented index unless -shards,
+	 * -stripes, or -fairness asks for a locked one.
 	 *
 	 */
 	private static final String serverFlag = "-server";
+	/**
+	 *
+	 * compress key in argument map, compresses the positions stored in the index
+	 * once it is built
+	 *
+	 */
+	private static final String compressFlag = "-compress";
+	/**
+	 *
+	 * snapshot key in argument map, value specifies the file to write a binary
+	 * snapshot of the index to
+	 *
+	 */
+	private static final String snapshotFlag = "-snapshot";
+	/**
+	 *
+	 * load key in argument map, value specifies the binary snapshot file to load
+	 * the index from, before anything from -html or -text is added
+	 *
+	 */
+	private static final String loadFlag = "-load";
+	/**
+	 *
+	 * segment key in argument map, value specifies the file to write a read-only
+	 * index segment to
+	 *
+	 */
+	private static final String segmentFlag = "-segment";
+	/**
+	 *
+	 * mapped key in argument map, value specifies the index segment file to
+	 * memory-map and search instead of the built index
+	 *
+	 */
+	private static final String mappedFlag = "-mapped";
+	/**
+	 *
+	 * segmented key in argument map, builds the index as immutable segments that
+	 * are merged in the background instead of combining under one lock, so
+	 * searches never wait. Used by default with -server.
+	 *
+	 */
+	private static final String segmentedFlag = "-segmented";
+	/**
+	 *
+	 * stripes key in argument map, value specifies the number of stripes to split
+	 * the words of the index into, each with its own lock, so workers combining
+	 * different words do not wait on each other
+	 *
+	 */
+	private static final String stripesFlag = "-stripes";
+	/**
+	 *
+	 * and key in argument map, only returns results that match every word of a
+	 * query instead of any word. Queries wrapped in double quotes are always
+	 * searched as phrases.
+	 *
+	 */
+	private static final String andFlag = "-and";
+	/**
+	 *
+	 * shards key in argument map, value specifies the number of shards to split
+	 * the documents of the index into, which are searched in parallel
+	 *
+	 */
+	private static final String shardsFlag = "-shards";
+	/**
+	 *
+	 * cache key in argument map, value specifies the number of recent searches to
+	 * keep results for until the index changes. Always used with -server.
+	 *
+	 */
+	private static final String cacheFlag = "-cache";
+	/**
+	 *
+	 * shard key in argument map, value such as 0/3 specifies which part of the
+	 * documents this process keeps out of how many, to serve from /shard next to
+	 * /search when used with -server. Cannot be used with -watch, which would add
+	 * every changed file to the part.
+	 *
+	 */
+	private static final String shardFlag = "-shard";
+	/**
+	 *
+	 * aggregate key in argument map, value specifies the comma separated base urls
+	 * of the processes serving each part of the index to search instead of a local
+	 * index
+	 *
+	 */
+	private static final String aggregateFlag = "-aggregate";
+	/**
+	 *
+	 * watch key in argument map, keeps watching the -text directory after the
+	 * index is built and updates only the files that are added, changed, or
+	 * deleted
+	 *
+	 */
+	private static final String watchFlag = "-watch";
+	/**
+	 *
+	 * compact key in argument map, writes the -index output without the spaces and
+	 * line breaks used to make it readable
+	 *
+	 */
+	private static final String compactFlag = "-compact";
+	/**
+	 *
+	 * gzip key in argument map, compresses the -index output with gzip
+	 *
+	 */
+	private static final String gzipFlag = "-gzip";
+	/**
+	 *
+	 * stealing key in argument map, gives each worker thread its own tasks and lets
+	 * idle workers steal from the others instead of sharing one queue
+	 *
+	 */
+	private static final String stealingFlag = "-stealing";
+	/**
+	 *
+	 * virtual key in argument map, runs each task on its own (virtual if available)
+	 * thread instead of a fixed number of workers, value specifies how many tasks
+	 * may run at the same time. Meant for crawling with -html.
+	 *
+	 */
+	private static final String virtualFlag = "-virtual";
+	/**
+	 *
+	 * metrics key in argument map, logs how long tasks wait and run and how busy
+	 * the work queue is, value specifies how often in seconds
+	 *
+	 */
+	private static final String metricsFlag = "-metrics";
+	/**
+	 *
+	 * capacity key in argument map, value specifies the most tasks the work queue
+	 * holds at once before -overflow applies
+	 *
+	 */
+	private static final String capacityFlag = "-capacity";
+	/**
+	 *
+	 * overflow key in argument map, value specifies what happens to tasks added
+	 * when the work queue is full: block (default), caller_runs, or reject. The
+	 * files, pages, and queries of the builders are never dropped, so with reject
+	 * they are handled by the thread that added them instead
+	 *
+	 */
+	private static final String overflowFlag = "-overflow";
+	/**
+	 *
+	 * fairness key in argument map, value specifies who goes first when searches
+	 * and updates both wait for the lock of the index: writer (default), reader,
+	 * or fifo. Cannot be used with -segmented, which has no lock.
+	 *
+	 */
+	private static final String fairnessFlag = "-fairness";
+
+	/**
+	 * Creates the work queue chosen by the command-line arguments.
+	 *
+	 * @param map     the command-line arguments
+	 * @param threads the number of worker threads
+	 * @return the work queue
+	 */
+	private static WorkQueue newWorkQueue(ArgumentMap map, int threads) {
+		WorkQueue.Scheduler scheduler = WorkQueue.Scheduler.SHARED;
+
+		if (map.hasFlag(virtualFlag)) {
+			int limit = map.getInteger(virtualFlag, 1000);
+			threads = limit < 1 ? 1000 : limit;
+			scheduler = WorkQueue.Scheduler.THREAD_PER_TASK;
+		} else if (map.hasFlag(stealingFlag)) {
+			scheduler = WorkQueue.Scheduler.STEALING;
+		}
+
+		if (!map.hasFlag(capacityFlag)) {
+			return new WorkQueue(threads, scheduler);
+		}
+
+		int capacity = map.getInteger(capacityFlag, 10000);
+		String overflow = map.getString(overflowFlag, "block");
+		WorkQueue.Overflow policy = WorkQueue.Overflow.BLOCK;
+
+		try {
+			policy = WorkQueue.Overflow.valueOf(overflow.toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unable to use overflow policy " + overflow + ", blocking instead");
+		}
+
+		return new WorkQueue(threads, scheduler, capacity < 1 ? 10000 : capacity, policy);
+	}
+
+	/**
+	 * Creates the thread-safe index chosen by the command-line arguments.
+	 *
+	 * @param map the command-line arguments
+	 * @return the index
+	 */
+	private static ThreadSafeInvertedIndex newSafeIndex(ArgumentMap map) {
+		String value = map.getString(fairnessFlag, "writer");
+		SimpleReadWriteLock.Fairness fairness = switch (value.toLowerCase(Locale.ROOT)) {
+			case "reader" -> SimpleReadWriteLock.Fairness.READER_PREFERRING;
+			case "fifo" -> SimpleReadWriteLock.Fairness.FIFO;
+			case "writer" -> SimpleReadWriteLock.Fairness.WRITER_PREFERRING;
+			default -> {
+				System.out.println("Unable to use fairness " + value + ", preferring writers instead");
+				yield SimpleReadWriteLock.Fairness.WRITER_PREFERRING;
+			}
+		};
+
+		if (map.hasFlag(shardsFlag)) {
+			int shards = map.getInteger(shardsFlag, ShardedInvertedIndex.DEFAULT);
+			return new ShardedInvertedIndex(shards < 1 ? ShardedInvertedIndex.DEFAULT : shards,
+					ForkJoinPool.commonPool(), fairness);
+		} else if (map.hasFlag(stripesFlag)) {
+			int stripes = map.getInteger(stripesFlag, StripedInvertedIndex.DEFAULT);
+			return new StripedInvertedIndex(stripes < 1 ? StripedInvertedIndex.DEFAULT : stripes, fairness);
+		} else if (map.hasFlag(segmentedFlag)) {
+			if (map.hasFlag(fairnessFlag)) {
+				System.out.println("Unable to use fairness " + value + " with a segmented index, which has no lock");
+			}
+			return new SegmentedInvertedIndex();
+		} else if (map.hasFlag(serverFlag) && !map.hasFlag(fairnessFlag)) {
+			return new SegmentedInvertedIndex();
+		} else {
+			return new ThreadSafeInvertedIndex(fairness);
+		}
+	}
 
 	/**
 	 * Initializes the classes necessary based on the provided command-line
@@ -98,9 +334,12 @@ public class Driver {
 		ResultBuilderInterface resultBuilder = null;
 		ThreadSafeInvertedIndex safe = null;
 		WorkQueue queue = null;
+		SearchableIndex searchable = null;
+		boolean all = map.hasFlag(andFlag);
 
-		if (map.hasFlag(threadsFlag) || map.hasFlag(htmlFlag) || map.hasFlag(serverFlag)) {
-			safe = new ThreadSafeInvertedIndex();
+		if (map.hasFlag(threadsFlag) || map.hasFlag(htmlFlag) || map.hasFlag(serverFlag) || map.hasFlag(watchFlag)
+				|| map.hasFlag(virtualFlag)) {
+			safe = newSafeIndex(map);
 			index = safe;
 
 			int threads = map.getInteger(threadsFlag, 5);
@@ -109,28 +348,41 @@ public class Driver {
 				threads = 5;
 			}
 
-			queue = new WorkQueue(threads);
-			resultBuilder = new MultithreadedResultBuilder(safe, queue);
-			if (map.hasFlag(htmlFlag)) {
-				int totalUrls = 1;
-				if (map.hasFlag(maxFlag) && map.getString(maxFlag) != null) {
-					totalUrls = map.getInteger(maxFlag);
-				}
-				String urlPath = map.getString(htmlFlag);
-				try {
-					URL url = new URL(urlPath);
-					WebCrawler crawler = new WebCrawler(totalUrls, queue, safe);
-					crawler.startBuild(url);
-				} catch (MalformedURLException e) {
-					System.out.println("Invalid url provided: " + urlPath.toString());
-				}
+			queue = newWorkQueue(map, threads);
+
+			if (map.hasFlag(metricsFlag)) {
+				int seconds = map.getInteger(metricsFlag, 10);
+				queue.report(TimeUnit.SECONDS.toMillis(seconds < 1 ? 10 : seconds));
 			}
 
 		} else {
 
 			index = new InvertedIndex();
+		}
+
+		if (map.hasFlag(loadFlag) && map.getString(loadFlag) != null) {
+			Path path = map.getPath(loadFlag);
 
-			resultBuilder = new ResultBuilder(index);
+			try {
+				index.readSnapshot(path);
+			} catch (IOException e) {
+				System.out.println("Unable to load the inverted index snapshot from path: " + path.toString());
+			}
+		}
+
+		if (map.hasFlag(htmlFlag) && queue != null && safe != null) {
+			int totalUrls = 1;
+			if (map.hasFlag(maxFlag) && map.getString(maxFlag) != null) {
+				totalUrls = map.getInteger(maxFlag);
+			}
+			String urlPath = map.getString(htmlFlag);
+			try {
+				URL url = new URL(urlPath);
+				WebCrawler crawler = new WebCrawler(totalUrls, queue, safe);
+				crawler.startBuild(url);
+			} catch (MalformedURLException e) {
+				System.out.println("Invalid url provided: " + urlPath.toString());
+			}
 		}
 
 		if (map.hasFlag(textFlag) && map.getString(textFlag) != null) {
@@ -148,11 +400,45 @@ public class Driver {
 			}
 		}
 
+		if (map.hasFlag(shardFlag) && map.getString(shardFlag) != null) {
+			String shard = map.getString(shardFlag);
+
+			try {
+				String[] parts = shard.split("/");
+				InvertedIndex part = index.splitByLocation(Integer.parseInt(parts[1]))[Integer.parseInt(parts[0])];
+
+				if (safe != null) {
+					safe = newSafeIndex(map);
+					safe.combineIndex(part);
+					index = safe;
+				} else {
+					index = part;
+				}
+			} catch (RuntimeException e) {
+				System.out.println("Unable to keep the part of the index given by: " + shard);
+			}
+		}
+
+		if (map.hasFlag(compressFlag)) {
+			index.compress();
+		}
+
+		if (map.hasFlag(snapshotFlag)) {
+			Path output = map.getPath(snapshotFlag, Path.of("index.snapshot"));
+
+			try {
+				index.writeSnapshot(output);
+			} catch (IOException e) {
+				System.out.println("Unable to write the inverted index snapshot to path: " + output.toString());
+			}
+		}
+
 		if (map.hasFlag(indexFlag)) {
 			Path output = map.getPath(indexFlag, Path.of("index.json"));
 
 			try {
-				index.writeJsonObject(output);
+				index.writeJsonObject(output,
+						new JsonIndexWriter(!map.hasFlag(compactFlag), map.hasFlag(gzipFlag), queue));
 			} catch (IOException e) {
 				System.out.println(
 						"There was a problem writing your InvertedIndex to an output file: " + output.toString());
@@ -167,6 +453,41 @@ public class Driver {
 			}
 
 		}
+		if (map.hasFlag(segmentFlag)) {
+			Path output = map.getPath(segmentFlag, Path.of("index.segment"));
+
+			try {
+				index.writeSegment(output);
+			} catch (IOException e) {
+				System.out.println("Unable to write the index segment to path: " + output.toString());
+			}
+		}
+
+		searchable = safe != null ? safe : index;
+
+		if (map.hasFlag(mappedFlag) && map.getString(mappedFlag) != null) {
+			Path path = map.getPath(mappedFlag);
+
+			try {
+				searchable = new MappedIndexSegment(path);
+			} catch (IOException e) {
+				System.out.println("Unable to map the index segment from path: " + path.toString());
+			}
+		}
+
+		if (map.hasFlag(aggregateFlag) && map.getString(aggregateFlag) != null) {
+			searchable = new RemoteIndex(Arrays.asList(map.getString(aggregateFlag).split(",")));
+		} else if (map.hasFlag(cacheFlag) || map.hasFlag(serverFlag)) {
+			int size = map.getInteger(cacheFlag, CachedIndex.DEFAULT);
+			searchable = new CachedIndex(searchable, size < 1 ? CachedIndex.DEFAULT : size);
+		}
+
+		if (queue != null) {
+			resultBuilder = new MultithreadedResultBuilder(searchable, queue, all);
+		} else {
+			resultBuilder = new ResultBuilder(searchable, all);
+		}
+
 		if (map.hasFlag(queryFlag)) {
 			if (map.getString(queryFlag) != null) {
 				Path path = map.getPath(queryFlag);
@@ -176,6 +497,9 @@ public class Driver {
 					resultBuilder.executeQuery(path, exact);
 				} catch (IOException e) {
 					System.out.println("Unable to read query from path: " + path.toString());
+				} catch (CompletionException e) {
+					System.out.println("Unable to search for every query from path: " + path.toString() + ", "
+							+ e.getMessage());
 				}
 			}
 		}
@@ -189,12 +513,27 @@ public class Driver {
 			}
 
 		}
+		if (map.hasFlag(watchFlag) && map.getString(textFlag) != null) {
+			Path path = map.getPath(textFlag);
+
+			if (map.hasFlag(shardFlag)) {
+				System.out.println("Unable to watch for changes to path: " + path.toString()
+						+ ", since only part of the index is kept");
+			} else {
+				try {
+					new Thread(new TextFileWatcher(path, safe), "TextFileWatcher").start();
+				} catch (IOException e) {
+					System.out.println("Unable to watch for changes to path: " + path.toString());
+				}
+			}
+		}
 		if (map.hasFlag(serverFlag)) {
 			int portNumber = map.getInteger(serverFlag, 8080);
 			ServletContextHandler handler = new ServletContextHandler();
 			ServletHolder holder;
-			holder = new ServletHolder(new QueryServlet(safe));
+			holder = new ServletHolder(new QueryServlet(searchable));
 			handler.addServlet(holder, "/search");
+			handler.addServlet(new ServletHolder(new ShardServlet(searchable)), "/shard");
 
 			Server server = new Server(portNumber);
 			server.setHandler(handler);
@@ -0,0 +1,211 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the inverted index as a compact binary snapshot so a server
+ * can reload an index instead of rebuilding it. The snapshot stores the
+ * document table followed by every word and its postings:
+ *
+ * <pre>
+ * magic, version
+ * documents: location, count, snippet, time crawled (millis or -1)
+ * words:     word, postings: document id, positions (delta encoded)
+ * </pre>
+ *
+ * Ids, counts, and positions are written as variable-byte integers, and strings
+ * as a length followed by UTF-8 bytes.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class IndexSnapshot {
+
+	/** The first bytes of every snapshot file ("IDX1"). */
+	private static final int MAGIC = 0x49445831;
+
+	/** The version of the snapshot format. */
+	private static final int VERSION = 1;
+
+	/**
+	 * Writes the index and document table as a binary snapshot to file.
+	 *
+	 * @param index     the word to document id to positions map
+	 * @param documents the document table of the index
+	 * @param path      the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void write(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents,
+			Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			writeVarInt(documents.size(), out);
+			for (int id = 0; id < documents.size(); id++) {
+				writeString(documents.getLocation(id), out);
+				writeVarInt(documents.getCount(id), out);
+
+				String snippet = documents.getSnippet(id);
+				out.writeBoolean(snippet != null);
+				if (snippet != null) {
+					writeString(snippet, out);
+				}
+
+				Timestamp timestamp = documents.getTimestamp(id);
+				out.writeLong(timestamp != null ? timestamp.getTime() : -1);
+			}
+
+			writeVarInt(index.size(), out);
+			for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+				writeString(word.getKey(), out);
+				writeVarInt(word.getValue().size(), out);
+
+				for (Map.Entry<Integer, PositionList> posting : word.getValue().entrySet()) {
+					PositionList positions = posting.getValue();
+					writeVarInt(posting.getKey(), out);
+					writeVarInt(positions.size(), out);
+
+					int previous = 0;
+					Iterator<Integer> iterator = positions.iterator();
+					while (iterator.hasNext()) {
+						int position = iterator.next();
+						writeVarInt(position - previous, out);
+						previous = position;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a binary snapshot from file into an empty index and document table.
+	 *
+	 * @param path      the file path to use
+	 * @param index     the empty word to document id to positions map to fill
+	 * @param documents the empty document table to fill
+	 * @throws IOException if an IO error occurs or the file is not a snapshot
+	 */
+	public static void read(Path path, TreeMap<String, TreeMap<Integer, PositionList>> index,
+			DocumentTable documents) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not an index snapshot: " + path);
+			}
+
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported index snapshot version " + version + ": " + path);
+			}
+
+			int size = readVarInt(in);
+			for (int i = 0; i < size; i++) {
+				int id = documents.add(readString(in));
+				documents.setCount(id, readVarInt(in));
+
+				if (in.readBoolean()) {
+					documents.setSnippet(id, readString(in));
+				}
+
+				long timestamp = in.readLong();
+				if (timestamp >= 0) {
+					documents.setTimestamp(id, new Timestamp(timestamp));
+				}
+			}
+
+			int words = readVarInt(in);
+			for (int i = 0; i < words; i++) {
+				String word = readString(in);
+				int postings = readVarInt(in);
+				TreeMap<Integer, PositionList> locations = new TreeMap<Integer, PositionList>();
+
+				for (int j = 0; j < postings; j++) {
+					int id = readVarInt(in);
+					int count = readVarInt(in);
+					PositionList positions = new PositionList();
+
+					int position = 0;
+					for (int k = 0; k < count; k++) {
+						position += readVarInt(in);
+						positions.add(position);
+					}
+					locations.put(id, positions);
+				}
+
+				index.put(word, locations);
+			}
+		}
+	}
+
+	/**
+	 * Writes the value 7 bits at a time, lowest bits first, with the high bit set
+	 * on every byte except the last.
+	 *
+	 * @param value the value to write
+	 * @param out   the stream to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeVarInt(int value, DataOutputStream out) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads a value written by {@link #writeVarInt(int, DataOutputStream)}.
+	 *
+	 * @param in the stream to use
+	 * @return the value
+	 * @throws IOException if an IO error occurs
+	 */
+	public static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Writes the length of the string followed by its UTF-8 bytes.
+	 *
+	 * @param text the string to write
+	 * @param out  the stream to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeString(String text, DataOutputStream out) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length, out);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(String, DataOutputStream)}.
+	 *
+	 * @param in the stream to use
+	 * @return the string
+	 * @throws IOException if an IO error occurs
+	 */
+	public static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
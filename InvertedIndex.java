@@ -2,11 +2,19 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * InvertedIndex class to store words and their occurrences.
@@ -15,38 +23,87 @@ import java.util.TreeSet;
  *         Francisco)
  * @version Fall 2021
  */
-public class InvertedIndex {
+public class InvertedIndex implements SearchableIndex {
 
 	/**
 	 *
-	 * { "platypus": { "input/dangerous/venomous.txt": [ 2, 4 ],
-	 * "input/mammals.txt": [ 3, 8 ] } }
+	 * { "platypus": { 0: [ 2, 4 ], 1: [ 3, 8 ] } } where 0 and 1 are the document
+	 * ids of "input/dangerous/venomous.txt" and "input/mammals.txt"
 	 *
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, TreeMap<Integer, PositionList>> index;
 
 	/**
-	 * map of path to count to store total words in each file
+	 * table of document ids to locations, counts, snippets, and time crawled,
+	 * replaced when the index is compacted
 	 */
-	private final TreeMap<String, Integer> counts;
+	private DocumentTable documents;
 
 	/**
-	 * map of path to snippet to store snipped of each file
+	 * sorted array of the words and their score bounds used for partial and
+	 * pruned search, null until it is first needed or after the index is
+	 * compacted
 	 */
-	private final TreeMap<String, String> htmlSnippets;
+	private volatile TermDictionary dictionary;
+
+	/**
+	 * whether the dictionary is up to date with the index, false once a word is
+	 * added or its postings change
+	 */
+	private volatile boolean fresh;
+
+	/**
+	 * words whose postings changed since the dictionary was built, only tracked
+	 * while there is a dictionary
+	 */
+	private final HashSet<String> changedWords;
+
+	/**
+	 * whether a word was added since the dictionary was built, so its array of
+	 * words must be built again
+	 */
+	private boolean newWords;
+
+	/**
+	 * number of times the index has changed, used to tell when cached search
+	 * results are out of date
+	 */
+	private final AtomicLong generation;
+
 	/**
-	 * map of path to time crawled
+	 * the index is compacted once one in this many document ids is removed
 	 */
-	private final TreeMap<String, Timestamp> timeCrawled;
+	private static final int COMPACT_FRACTION = 8;
 
 	/**
 	 * default constructor
 	 */
 	public InvertedIndex() {
-		index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		counts = new TreeMap<String, Integer>();
-		htmlSnippets = new TreeMap<String, String>();
-		timeCrawled = new TreeMap<String, Timestamp>();
+		index = new TreeMap<String, TreeMap<Integer, PositionList>>();
+		documents = new DocumentTable();
+		dictionary = null;
+		fresh = false;
+		changedWords = new HashSet<String>();
+		newWords = false;
+		generation = new AtomicLong();
+	}
+
+	/**
+	 * Initializes an index that shares the words and postings of the other index
+	 * but has its own document table, and the term dictionary of the other index
+	 * if it is up to date.
+	 *
+	 * @param other     the index to share the words and postings of
+	 * @param documents the document table of the new index
+	 */
+	private InvertedIndex(InvertedIndex other, DocumentTable documents) {
+		index = other.index;
+		this.documents = documents;
+		dictionary = other.fresh ? other.dictionary : null;
+		fresh = dictionary != null;
+		changedWords = new HashSet<String>();
+		newWords = false;
+		generation = new AtomicLong(other.generation());
 	}
 
 	/**
@@ -56,7 +113,17 @@ public class InvertedIndex {
 	 * @return int
 	 */
 	public int size(String word) {
-		return contains(word) ? index.get(word).size() : 0;
+		if (!contains(word)) {
+			return 0;
+		}
+
+		int size = 0;
+		for (int id : index.get(word).keySet()) {
+			if (!documents.isRemoved(id)) {
+				size++;
+			}
+		}
+		return size;
 	}
 
 	/**
@@ -67,10 +134,11 @@ public class InvertedIndex {
 	 * @return int
 	 */
 	public int size(String word, String path) {
-		TreeMap<String, TreeSet<Integer>> paths = index.get(word);
+		TreeMap<Integer, PositionList> paths = index.get(word);
+		int id = documents.getId(path);
 		if (paths != null) {
-			if (paths.containsKey(path)) {
-				return paths.get(path).size();
+			if (paths.containsKey(id)) {
+				return paths.get(id).size();
 			}
 		}
 		return 0;
@@ -82,7 +150,7 @@ public class InvertedIndex {
 	 * @return int
 	 */
 	public int size() {
-		return index.size();
+		return documents.removed() == 0 ? index.size() : liveWords().size();
 	}
 
 	/**
@@ -94,7 +162,13 @@ public class InvertedIndex {
 	 */
 	public Set<String> get(String word) {
 		if (index.containsKey(word)) {
-			return Collections.unmodifiableSet(index.get(word).keySet());
+			TreeSet<String> paths = new TreeSet<String>();
+			for (int id : index.get(word).keySet()) {
+				if (!documents.isRemoved(id)) {
+					paths.add(documents.getLocation(id));
+				}
+			}
+			return Collections.unmodifiableSet(paths);
 		}
 		return Collections.emptySet();
 	}
@@ -108,7 +182,7 @@ public class InvertedIndex {
 	 */
 	public Set<Integer> get(String location, String path) {
 		if (contains(location, path)) {
-			return index.get(location).get(path);
+			return Collections.unmodifiableSet(index.get(location).get(documents.getId(path)));
 		}
 		return Collections.emptySet();
 
@@ -120,7 +194,23 @@ public class InvertedIndex {
 	 * @return index
 	 */
 	public Set<String> get() {
-		return Collections.unmodifiableSet(index.keySet());
+		return Collections.unmodifiableSet(documents.removed() == 0 ? index.keySet() : liveWords());
+	}
+
+	/**
+	 * Returns the words that still have a posting for a document that was not
+	 * removed.
+	 *
+	 * @return sorted set of words
+	 */
+	private TreeSet<String> liveWords() {
+		TreeSet<String> words = new TreeSet<String>();
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+			if (isLive(word.getValue())) {
+				words.add(word.getKey());
+			}
+		}
+		return words;
 	}
 
 	/**
@@ -131,7 +221,7 @@ public class InvertedIndex {
 	 */
 
 	public boolean contains(String word) {
-		return index.containsKey(word);
+		return index.containsKey(word) && isLive(index.get(word));
 	}
 
 	/**
@@ -143,7 +233,7 @@ public class InvertedIndex {
 	 */
 
 	public boolean contains(String word, String path) {
-		return index.containsKey(word) && index.get(word).containsKey(path);
+		return index.containsKey(word) && index.get(word).containsKey(documents.getId(path));
 	}
 
 	/**
@@ -156,8 +246,87 @@ public class InvertedIndex {
 	 */
 
 	public boolean contains(String word, String path, int position) {
-		return index.containsKey(word) && index.get(word).containsKey(path)
-				&& index.get(word).get(path).contains(position);
+		return contains(word, path) && index.get(word).get(documents.getId(path)).contains(position);
+	}
+
+	/**
+	 * Returns the total words stored for each location
+	 *
+	 * @return unmodifiable sorted map of location to count
+	 */
+	public Map<String, Integer> getCounts() {
+		return Collections.unmodifiableMap(documents.getCounts());
+	}
+
+	/**
+	 * Replaces the total words stored for a location already in the index, for
+	 * indexes whose counts are kept somewhere else.
+	 *
+	 * @param location the location to update
+	 * @param count    the total words of the location
+	 */
+	void setCount(String location, int count) {
+		int id = documents.getId(location);
+		if (id >= 0) {
+			if (count < documents.getCount(id)) {
+				// a smaller count raises the bound of every word of the location
+				forgetDictionary();
+			}
+			documents.setCount(id, count);
+			changed();
+		}
+	}
+
+	/**
+	 * Returns the number of times the index has changed. Increases after every
+	 * change is visible to searches.
+	 *
+	 * @return the generation of the index
+	 */
+	@Override
+	public long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * Marks the index as changed, moving to the next generation. Must be called
+	 * after the change is made.
+	 */
+	void changed() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Remembers that the postings of a word changed, so only that word is found
+	 * again the next time the term dictionary is needed. Larger counts only lower
+	 * the bounds of the other words, so their bounds are still safe to prune with.
+	 * Nothing is tracked until there is a dictionary to update.
+	 *
+	 * @param word  the word whose postings changed
+	 * @param added whether the word is new to the index
+	 */
+	private void changed(String word, boolean added) {
+		if (dictionary != null) {
+			if (added) {
+				newWords = true;
+			} else {
+				changedWords.add(word);
+			}
+			fresh = false;
+		}
+	}
+
+	/**
+	 * Throws away the term dictionary, so it is built from scratch the next time
+	 * it is needed.
+	 */
+	private void forgetDictionary() {
+		synchronized (changedWords) {
+			dictionary = null;
+			fresh = false;
+			changedWords.clear();
+			newWords = false;
+		}
 	}
 
 	/**
@@ -165,7 +334,7 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return index.toString();
+		return compacted().index.toString();
 	}
 
 	/**
@@ -175,7 +344,21 @@ public class InvertedIndex {
 	 * @throws IOException when IOException occurs
 	 */
 	public void writeJsonObject(Path path) throws IOException {
-		SimpleJsonWriter.asObject(index, path);
+		writeJsonObject(path, new JsonIndexWriter());
+	}
+
+	/**
+	 * Writes a JSON object to the output path provided using the writer, which
+	 * chooses the format and whether to compress it.
+	 *
+	 * @param path   output file path to write JSON version of InvertedIndex
+	 * @param writer the writer to use
+	 * @throws IOException when IOException occurs
+	 * @see JsonIndexWriter
+	 */
+	public void writeJsonObject(Path path, JsonIndexWriter writer) throws IOException {
+		InvertedIndex compacted = compacted();
+		writer.write(compacted.index, compacted.documents, path);
 	}
 
 	/**
@@ -185,7 +368,46 @@ public class InvertedIndex {
 	 * @throws IOException when IOException occurs
 	 */
 	public void writeCountsJsonObject(Path path) throws IOException {
-		SimpleJsonWriter.asObject(counts, path);
+		SimpleJsonWriter.asObject(documents.getCounts(), path);
+	}
+
+	/**
+	 * Writes a binary snapshot of the index to the output path provided.
+	 *
+	 * @param path output file path to write the snapshot to
+	 * @throws IOException when IOException occurs
+	 * @see IndexSnapshot
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		InvertedIndex compacted = compacted();
+		IndexSnapshot.write(compacted.index, compacted.documents, path);
+	}
+
+	/**
+	 * Writes a read-only segment of the index that can be memory-mapped for
+	 * searching.
+	 *
+	 * @param path output file path to write the segment to
+	 * @throws IOException when IOException occurs
+	 * @see MappedIndexSegment
+	 */
+	public void writeSegment(Path path) throws IOException {
+		InvertedIndex compacted = compacted();
+		MappedIndexSegment.write(compacted.index, compacted.documents, path);
+	}
+
+	/**
+	 * Reads a binary snapshot from the path provided and combines it with this
+	 * index.
+	 *
+	 * @param path file path of the snapshot to read
+	 * @throws IOException when IOException occurs
+	 * @see IndexSnapshot
+	 */
+	public void readSnapshot(Path path) throws IOException {
+		InvertedIndex snapshot = new InvertedIndex();
+		IndexSnapshot.read(path, snapshot.index, snapshot.documents);
+		combineIndex(snapshot);
 	}
 
 	/**
@@ -196,12 +418,25 @@ public class InvertedIndex {
 	 * @param position the position where the word was found in the file
 	 */
 	public void add(String word, String path, int position) {
-		index.putIfAbsent(word, new TreeMap<>());
-		index.get(word).putIfAbsent(path, new TreeSet<>());
-		boolean modified = index.get(word).get(path).add(position);
+		add(word, documents.add(path), position);
+	}
+
+	/**
+	 * Adds or updates word's value with provided document id/position
+	 *
+	 * @param word     the word to be added or updated in the index
+	 * @param id       the document id of the path where the word was found
+	 * @param position the position where the word was found in the file
+	 */
+	private void add(String word, int id, int position) {
+		boolean added = index.putIfAbsent(word, new TreeMap<>()) == null;
+		index.get(word).putIfAbsent(id, new PositionList());
+		boolean modified = index.get(word).get(id).add(position);
 
 		if (modified) {
-			counts.put(path, counts.getOrDefault(path, 0) + 1);
+			documents.incrementCount(id);
+			changed(word, added);
+			changed();
 		}
 
 	}
@@ -216,48 +451,237 @@ public class InvertedIndex {
 	 * @param timestamp   the time at which the page was crawled
 	 */
 	public void add(String word, String path, int position, String htmlSnippet, Timestamp timestamp) {
-		add(word, path, position);
-		htmlSnippets.put(path, htmlSnippet);
-		// timeCrawled.put(path, timestamp);
+		int id = documents.add(path);
+		add(word, id, position);
+		documents.setSnippet(id, htmlSnippet);
+		// documents.setTimestamp(id, timestamp);
 	}
 
 	/**
-	 * method that calls exact or partial search based on value of exact
+	 * Removes the location, so it is no longer found by any search. The document
+	 * is only given a tombstone, and its postings are purged from every word the
+	 * next time the index is compacted. The location is given a new document id
+	 * if it is added again.
 	 *
-	 * @param queries the query line being searched for in the index
-	 * @param exact   whether to perform exact search or partial
-	 * @return ArrayList list of results matching the query
+	 * @param location the path or url to remove
+	 * @return true if the location had any words to remove
+	 * @see #compact()
 	 */
-	public ArrayList<Result> search(Set<String> queries, boolean exact) {
-		if (!exact) {
-			return partialSearch(queries);
-		} else {
-			return exactSearch(queries);
+	public boolean remove(String location) {
+		int id = documents.getId(location);
+
+		if (id < 0) {
+			return false;
+		}
+
+		boolean removed = documents.getCount(id) > 0;
+		documents.remove(location);
+
+		if (removed) {
+			changed();
 		}
+
+		return removed;
 	}
 
 	/**
-	 * Exact search method that returns list of results matching input query exactly
+	 * Returns a copy of the index without the location, for indexes that are no
+	 * longer modified such as the segments of a {@link SegmentedInvertedIndex}.
+	 * The copy only has its own tombstones and shares everything else with this
+	 * index, so it takes time in the number of documents instead of the size of
+	 * the index. Neither index may be modified afterwards.
+	 *
+	 * @param location the path or url to remove
+	 * @return the copy, or null if the location had no words to remove
+	 */
+	InvertedIndex without(String location) {
+		int id = documents.getId(location);
+
+		if (id < 0 || documents.getCount(id) == 0) {
+			return null;
+		}
+
+		InvertedIndex copy = new InvertedIndex(this, new DocumentTable(documents));
+		copy.documents.remove(location);
+		return copy;
+	}
+
+	/**
+	 * Returns the total words stored for the location.
+	 *
+	 * @param location the path or url to look for
+	 * @return the total words, or 0 if the location is not in the index
+	 */
+	int getCount(String location) {
+		int id = documents.getId(location);
+		return id < 0 ? 0 : documents.getCount(id);
+	}
+
+	/**
+	 * Replaces the words of the location with the words in the other index, such
+	 * as a page that was crawled again. The other index should only hold the
+	 * location, and is combined the same way as {@link #combineIndex(InvertedIndex)}.
+	 *
+	 * @param location the path or url to replace
+	 * @param other    the index with the new words of the location
+	 */
+	public void replace(String location, InvertedIndex other) {
+		remove(location);
+		combineIndex(other);
+	}
+
+	/**
+	 * Returns the number of removed documents whose postings have not been purged
+	 * yet.
+	 *
+	 * @return number of tombstones
+	 */
+	public int tombstones() {
+		return documents.removed();
+	}
+
+	/**
+	 * Returns true once enough documents have been removed that compacting is
+	 * worth the time, which keeps the memory held by removed documents to a
+	 * fraction of the index.
+	 *
+	 * @return boolean
+	 */
+	boolean needsCompaction() {
+		return documents.removed() > 0 && documents.removed() * COMPACT_FRACTION >= documents.size();
+	}
+
+	/**
+	 * Purges the postings of removed documents from every word, drops the words
+	 * left without postings, and numbers the remaining documents again so the
+	 * document table does not keep growing. Position lists are moved, not
+	 * copied.
+	 */
+	public void compact() {
+		if (documents.removed() == 0) {
+			return;
+		}
+
+		DocumentTable compacted = new DocumentTable();
+		int[] ids = new int[documents.size()];
+
+		for (int id = 0; id < ids.length; id++) {
+			if (documents.isRemoved(id)) {
+				ids[id] = -1;
+			} else {
+				ids[id] = compacted.add(documents.getLocation(id));
+				compacted.setCount(ids[id], documents.getCount(id));
+				compacted.setSnippet(ids[id], documents.getSnippet(id));
+				compacted.setTimestamp(ids[id], documents.getTimestamp(id));
+			}
+		}
+
+		Iterator<Map.Entry<String, TreeMap<Integer, PositionList>>> words = index.entrySet().iterator();
+		while (words.hasNext()) {
+			Map.Entry<String, TreeMap<Integer, PositionList>> word = words.next();
+			TreeMap<Integer, PositionList> postings = new TreeMap<Integer, PositionList>();
+
+			for (Map.Entry<Integer, PositionList> posting : word.getValue().entrySet()) {
+				int id = ids[posting.getKey()];
+				if (id >= 0) {
+					postings.put(id, posting.getValue());
+				}
+			}
+
+			if (postings.isEmpty()) {
+				words.remove();
+			} else {
+				word.setValue(postings);
+			}
+		}
+
+		documents = compacted;
+		forgetDictionary();
+		changed();
+	}
+
+	/**
+	 * Returns this index if nothing has been removed, otherwise a compacted copy
+	 * that shares its position lists with this index. Used to write the index
+	 * without the removed documents.
+	 *
+	 * @return this index or a compacted copy
+	 */
+	private InvertedIndex compacted() {
+		if (documents.removed() == 0) {
+			return this;
+		}
+
+		InvertedIndex copy = new InvertedIndex();
+		copy.combineIndex(this);
+		return copy;
+	}
+
+	/**
+	 * Returns true if the word has a posting for any document that was not
+	 * removed.
+	 *
+	 * @param postings the document id to positions map of the word
+	 * @return boolean
+	 */
+	private boolean isLive(TreeMap<Integer, PositionList> postings) {
+		if (documents.removed() == 0) {
+			return !postings.isEmpty();
+		}
+
+		for (int id : postings.keySet()) {
+			if (!documents.isRemoved(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compresses the positions of every word and document. Meant to be called once
+	 * the index is done being built, since adding to a compressed position list
+	 * decompresses it again. Each list is replaced by a compressed copy, so lists
+	 * shared with other indexes are not modified.
+	 *
+	 * @see PositionList#compress()
+	 */
+	public void compress() {
+		for (TreeMap<Integer, PositionList> postings : index.values()) {
+			for (Map.Entry<Integer, PositionList> entry : postings.entrySet()) {
+				PositionList compressed = new PositionList(entry.getValue());
+				compressed.compress();
+				entry.setValue(compressed);
+			}
+		}
+	}
+
+	/**
+	 * Adds the postings of a word to the results, creating a result the first time
+	 * a document is seen
 	 *
-	 * @param query         the word or query being searched for in the index
+	 * @param locationMap   the document id to positions map of the word
 	 * @param results       the list to store results
 	 * @param searchResults map of results seen so far
 	 */
-	private void searchHelper(String query, ArrayList<Result> results, HashMap<String, Result> searchResults) {
-		TreeMap<String, TreeSet<Integer>> locationMap = index.get(query);
+	private void searchHelper(TreeMap<Integer, PositionList> locationMap, ArrayList<Result> results,
+			HashMap<Integer, Result> searchResults) {
+		for (Map.Entry<Integer, PositionList> entry : locationMap.entrySet()) {
+			int id = entry.getKey();
+			if (documents.isRemoved(id)) {
+				continue;
+			}
 
-		for (String path : locationMap.keySet()) {
-			Result result = searchResults.get(path);
+			Result result = searchResults.get(id);
 
 			if (result == null) {
-				result = new Result(path,
-						htmlSnippets.get(path) != null ? htmlSnippets.get(path) : "No preview available",
-						timeCrawled.get(path) != null ? timeCrawled.get(path).toString() : "unknown");
-				searchResults.put(path, result);
+				result = new Result(documents.getLocation(id),
+						documents.getSnippet(id) != null ? documents.getSnippet(id) : "No preview available",
+						documents.getTimestamp(id) != null ? documents.getTimestamp(id).toString() : "unknown");
+				searchResults.put(id, result);
 				results.add(result);
 			}
 
-			result.update(query);
+			result.update(entry.getValue().size(), documents.getCount(id));
 		}
 	}
 
@@ -267,13 +691,15 @@ public class InvertedIndex {
 	 * @param queries the query line being searched for in the index
 	 * @return ArrayList list of results matching the query
 	 */
+	@Override
 	public ArrayList<Result> exactSearch(Set<String> queries) {
 		ArrayList<Result> results = new ArrayList<Result>();
-		HashMap<String, Result> searchResults = new HashMap<String, Result>();
+		HashMap<Integer, Result> searchResults = new HashMap<Integer, Result>();
 
 		for (String query : queries) {
-			if (index.containsKey(query)) {
-				searchHelper(query, results, searchResults);
+			TreeMap<Integer, PositionList> locationMap = index.get(query);
+			if (locationMap != null) {
+				searchHelper(locationMap, results, searchResults);
 			}
 		}
 
@@ -288,16 +714,17 @@ public class InvertedIndex {
 	 * @param queries the set of words searched for in the index
 	 * @return ArrayList list of results matching the query
 	 */
+	@Override
 	public ArrayList<Result> partialSearch(Set<String> queries) {
 		ArrayList<Result> results = new ArrayList<Result>();
-		HashMap<String, Result> searchResults = new HashMap<String, Result>();
+		HashMap<Integer, Result> searchResults = new HashMap<Integer, Result>();
+
+		TermDictionary terms = getDictionary();
 
 		for (String queryLine : queries) {
-			for (String query : index.tailMap(queryLine).keySet()) {
-				if (!query.startsWith(queryLine)) {
-					break;
-				}
-				searchHelper(query, results, searchResults);
+			int end = terms.end(queryLine);
+			for (int i = terms.start(queryLine); i < end; i++) {
+				searchHelper(terms.getPostings(i), results, searchResults);
 			}
 		}
 
@@ -307,42 +734,779 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * Takes the index generated by a worker queue and combines it with overall
-	 * index
+	 * Exact search method that only keeps the k best results. Matches are counted
+	 * in an array by document id and a result is only created for the documents
+	 * that make it into the top k.
 	 *
-	 * @param other the index to add to current index
+	 * @param queries the query line being searched for in the index
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
 	 */
-	public void combineIndex(InvertedIndex other) {
-		for (String word : other.index.keySet()) {
-			TreeMap<String, TreeSet<Integer>> inner = other.index.get(word);
-
-			if (this.index.containsKey(word)) {
-				for (String path : inner.keySet()) {
-					if (this.index.get(word).containsKey(path)) {
-						this.index.get(word).get(path).addAll(other.index.get(word).get(path));
-					} else {
-						this.index.get(word).put(path, other.index.get(word).get(path));
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		int[] matches = new int[documents.size()];
+		int[] hits = new int[documents.size()];
+		int total = 0;
+
+		for (String query : queries) {
+			TreeMap<Integer, PositionList> locationMap = index.get(query);
+			if (locationMap != null) {
+				total = countMatches(locationMap, matches, hits, total);
+			}
+		}
+
+		return topResults(matches, hits, total, k);
+	}
+
+	/**
+	 * Partial search method that only keeps the k best results. Matches are
+	 * counted in an array by document id and a result is only created for the
+	 * documents that make it into the top k.
+	 *
+	 * @param queries the set of words searched for in the index
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		int[] matches = new int[documents.size()];
+		int[] hits = new int[documents.size()];
+		int total = 0;
+
+		TermDictionary terms = getDictionary();
+
+		for (String queryLine : queries) {
+			int end = terms.end(queryLine);
+			for (int i = terms.start(queryLine); i < end; i++) {
+				total = countMatches(terms.getPostings(i), matches, hits, total);
+			}
+		}
+
+		return topResults(matches, hits, total, k);
+	}
+
+	/**
+	 * Adds the postings of a word to the matches of each document, remembering
+	 * each document the first time it is seen.
+	 *
+	 * @param locationMap the document id to positions map of the word
+	 * @param matches     the matches so far of each document id
+	 * @param hits        the document ids seen so far
+	 * @param total       the number of document ids seen so far
+	 * @return the number of document ids seen
+	 */
+	private int countMatches(TreeMap<Integer, PositionList> locationMap, int[] matches, int[] hits, int total) {
+		for (Map.Entry<Integer, PositionList> entry : locationMap.entrySet()) {
+			int id = entry.getKey();
+			if (documents.isRemoved(id)) {
+				continue;
+			}
+
+			if (matches[id] == 0) {
+				hits[total++] = id;
+			}
+			matches[id] += entry.getValue().size();
+		}
+		return total;
+	}
+
+	/**
+	 * Keeps the k best documents using a heap of at most k document ids with the
+	 * worst one on top, and creates the results for those documents.
+	 *
+	 * @param matches the matches of each document id
+	 * @param hits    the document ids that matched
+	 * @param total   the number of document ids that matched
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	private TopResults topResults(int[] matches, int[] hits, int total, int k) {
+		ArrayList<Result> results = new ArrayList<Result>();
+
+		if (k > 0) {
+			PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.min(k, Math.max(1, total)),
+					(a, b) -> compareMatches(b, a, matches));
+
+			for (int i = 0; i < total; i++) {
+				int id = hits[i];
+				if (heap.size() < k) {
+					heap.add(id);
+				} else if (compareMatches(id, heap.peek(), matches) < 0) {
+					heap.poll();
+					heap.add(id);
+				}
+			}
+
+			for (int id : heap) {
+				results.add(newResult(id, matches[id]));
+			}
+			Collections.sort(results);
+		}
+
+		return new TopResults(results, total);
+	}
+
+	/**
+	 * Creates the result for a document.
+	 *
+	 * @param id      the document id
+	 * @param matches the number of times the query words appear in the document
+	 * @return the scored result
+	 */
+	private Result newResult(int id, int matches) {
+		Result result = new Result(documents.getLocation(id),
+				documents.getSnippet(id) != null ? documents.getSnippet(id) : "No preview available",
+				documents.getTimestamp(id) != null ? documents.getTimestamp(id).toString() : "unknown");
+		result.update(matches, documents.getCount(id));
+		return result;
+	}
+
+	/**
+	 * Searches for the k best results using MaxScore pruning. The score of a
+	 * document is the sum of what each matching word adds to it, and no word adds
+	 * more than its bound in the {@link TermDictionary}. Once k results are found,
+	 * the words whose bounds add up to less than the worst of them cannot make a
+	 * document good enough on their own. Their postings are only checked for
+	 * documents found through the other words, and only while the document can
+	 * still beat the worst result.
+	 *
+	 * The results are the same as {@link #search(Set, boolean, int)}, but the
+	 * documents that were skipped are not counted, so the total is only a lower
+	 * bound once anything was skipped.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		TermDictionary terms = getDictionary();
+		ArrayList<Cursor> cursors = new ArrayList<Cursor>();
+
+		for (String query : queries) {
+			if (exact) {
+				int found = terms.find(query);
+				if (found >= 0) {
+					cursors.add(new Cursor(terms.getPostings(found), terms.getBound(found)));
+				}
+			} else {
+				int end = terms.end(query);
+				for (int i = terms.start(query); i < end; i++) {
+					cursors.add(new Cursor(terms.getPostings(i), terms.getBound(i)));
+				}
+			}
+		}
+
+		if (cursors.isEmpty()) {
+			return new TopResults(new ArrayList<Result>(), 0);
+		}
+
+		if (k <= 0) {
+			return new TopResults(new ArrayList<Result>(), 0, false);
+		}
+
+		// cursors before the first essential one can not make the top k on their own
+		cursors.sort((a, b) -> Double.compare(a.bound, b.bound));
+		double[] below = new double[cursors.size() + 1];
+		for (int i = 0; i < cursors.size(); i++) {
+			below[i + 1] = below[i] + cursors.get(i).bound;
+		}
+
+		int[] matches = new int[documents.size()];
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(k, (a, b) -> compareMatches(b, a, matches));
+		double threshold = -1;
+		int essential = 0;
+		int total = 0;
+
+		while (essential < cursors.size()) {
+			int id = Integer.MAX_VALUE;
+			for (int i = essential; i < cursors.size(); i++) {
+				id = Math.min(id, cursors.get(i).id());
+			}
+
+			if (id == Integer.MAX_VALUE) {
+				break;
+			}
+
+			int count = 0;
+			for (int i = essential; i < cursors.size(); i++) {
+				Cursor cursor = cursors.get(i);
+				if (cursor.id() == id) {
+					count += cursor.count();
+					cursor.next();
+				}
+			}
+
+			if (documents.isRemoved(id)) {
+				continue;
+			}
+
+			boolean skipped = false;
+			for (int i = essential - 1; i >= 0 && !skipped; i--) {
+				if (isBelow((double) count / documents.getCount(id) + below[i + 1], threshold)) {
+					skipped = true;
+				} else {
+					Cursor cursor = cursors.get(i);
+					cursor.seek(id);
+					if (cursor.id() == id) {
+						count += cursor.count();
 					}
 				}
+			}
+
+			total++;
+			if (skipped) {
+				continue;
+			}
+
+			matches[id] = count;
+			if (heap.size() < k) {
+				heap.add(id);
+			} else if (compareMatches(id, heap.peek(), matches) < 0) {
+				heap.poll();
+				heap.add(id);
+			}
+
+			if (heap.size() == k) {
+				threshold = (double) matches[heap.peek()] / documents.getCount(heap.peek());
+				while (essential < cursors.size() && isBelow(below[essential + 1], threshold)) {
+					essential++;
+				}
+			}
+		}
+
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (int id : heap) {
+			results.add(newResult(id, matches[id]));
+		}
+		Collections.sort(results);
+
+		return new TopResults(results, total, essential == 0);
+	}
+
+	/**
+	 * Searches for the documents that match every word of the query. The sorted
+	 * document ids of each word are intersected starting from the rarest, and only
+	 * the documents left are scored.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @return ArrayList list of results matching every word of the query
+	 */
+	@Override
+	public ArrayList<Result> andSearch(Set<String> queries, boolean exact) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		TermDictionary terms = getDictionary();
+
+		int[] starts = new int[queries.size()];
+		int[] ends = new int[queries.size()];
+		ArrayList<int[]> lists = new ArrayList<int[]>();
+
+		int q = 0;
+		for (String query : queries) {
+			if (exact) {
+				starts[q] = terms.find(query);
+				ends[q] = starts[q] + 1;
 			} else {
-				this.index.put(word, inner);
+				starts[q] = terms.start(query);
+				ends[q] = terms.end(query);
+			}
+
+			if (starts[q] < 0 || starts[q] >= ends[q]) {
+				return results;
+			}
+
+			int[] ids = terms.getDocuments(starts[q]);
+			for (int i = starts[q] + 1; i < ends[q]; i++) {
+				ids = union(ids, terms.getDocuments(i));
 			}
+			lists.add(ids);
+			q++;
+		}
+
+		if (lists.isEmpty()) {
+			return results;
 		}
 
-		for (String location : other.counts.keySet()) {
-			if (counts.containsKey(location)) {
-				if (counts.get(location) < other.counts.get(location)) {
-					counts.put(location, other.counts.get(location));
+		for (int id : intersect(lists)) {
+			if (documents.isRemoved(id)) {
+				continue;
+			}
+
+			int count = 0;
+			for (int i = 0; i < starts.length; i++) {
+				for (int word = starts[i]; word < ends[i]; word++) {
+					PositionList positions = terms.getPostings(word).get(id);
+					if (positions != null) {
+						count += positions.size();
+					}
 				}
+			}
+			results.add(newResult(id, count));
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Searches for the documents that contain the words of the phrase next to
+	 * each other and in order. The documents that contain every word are found
+	 * the same way as {@link #andSearch(Set, boolean)}. The positions of each word
+	 * are shifted back to where the phrase would start and intersected the same
+	 * way as the document ids. Results are scored by the number of times the
+	 * phrase appears.
+	 *
+	 * @param phrase the stemmed words of the phrase, in order
+	 * @return ArrayList list of results matching the phrase
+	 */
+	@Override
+	public ArrayList<Result> phraseSearch(List<String> phrase) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		TermDictionary terms = getDictionary();
+
+		int[] words = new int[phrase.size()];
+		ArrayList<int[]> lists = new ArrayList<int[]>();
+
+		for (int i = 0; i < words.length; i++) {
+			words[i] = terms.find(phrase.get(i));
+			if (words[i] < 0) {
+				return results;
+			}
+			lists.add(terms.getDocuments(words[i]));
+		}
+
+		if (lists.isEmpty()) {
+			return results;
+		}
+
+		ArrayList<int[]> starts = new ArrayList<int[]>(words.length);
+
+		for (int id : intersect(lists)) {
+			if (documents.isRemoved(id)) {
+				continue;
+			}
+
+			// each list is decoded once, and shifted back to where the phrase would start
+			starts.clear();
+			for (int i = 0; i < words.length; i++) {
+				int[] positions = terms.getPostings(words[i]).get(id).toIntArray();
+				for (int j = 0; j < positions.length; j++) {
+					positions[j] -= i;
+				}
+				starts.add(positions);
+			}
+
+			int count = intersect(starts).length;
+
+			if (count > 0) {
+				results.add(newResult(id, count));
+			}
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Intersects sorted arrays of document ids (or positions), starting with the
+	 * shortest so the result never grows past it.
+	 *
+	 * @param lists the sorted arrays to intersect, must not be empty
+	 * @return the sorted document ids found in every array
+	 */
+	private static int[] intersect(List<int[]> lists) {
+		ArrayList<int[]> sorted = new ArrayList<int[]>(lists);
+		sorted.sort(Comparator.comparingInt(list -> list.length));
+
+		int[] result = sorted.get(0);
+		for (int i = 1; i < sorted.size() && result.length > 0; i++) {
+			result = intersect(result, sorted.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Intersects a short and a long sorted array of document ids by galloping
+	 * through the long one, so each lookup only costs the log of the distance
+	 * skipped instead of walking every id in between.
+	 *
+	 * @param small the shorter sorted array
+	 * @param large the longer sorted array
+	 * @return the sorted document ids found in both
+	 */
+	private static int[] intersect(int[] small, int[] large) {
+		int[] result = new int[small.length];
+		int size = 0;
+		int low = 0;
+
+		for (int i = 0; i < small.length && low < large.length; i++) {
+			int target = small[i];
+
+			// double the step until the target is passed, then binary search
+			int step = 1;
+			int high = low;
+			while (high < large.length && large[high] < target) {
+				low = high + 1;
+				high += step;
+				step *= 2;
+			}
+
+			int found = Arrays.binarySearch(large, low, Math.min(high + 1, large.length), target);
+			if (found >= 0) {
+				result[size++] = target;
+				low = found + 1;
 			} else {
-				counts.put(location, other.counts.get(location));
+				low = -found - 1;
 			}
 		}
 
-		for (String path : other.htmlSnippets.keySet()) {
-			htmlSnippets.put(path, other.htmlSnippets.get(path));
-			timeCrawled.put(path, other.timeCrawled.get(path));
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Merges two sorted arrays of document ids without duplicates.
+	 *
+	 * @param a the first sorted array
+	 * @param b the second sorted array
+	 * @return the sorted document ids found in either
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[k++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[k++] = b[j++];
+			} else {
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[k++] = a[i++];
 		}
+		while (j < b.length) {
+			result[k++] = b[j++];
+		}
+
+		return Arrays.copyOf(result, k);
+	}
+
+	/**
+	 * Returns true if a score bound is safely below the score of the worst result
+	 * kept, leaving room for rounding since a result with the same score may still
+	 * rank higher.
+	 *
+	 * @param bound     the highest score a document can reach
+	 * @param threshold the score of the worst result kept, or -1 if fewer than k
+	 *                  results have been found
+	 * @return true if the document can not make the results
+	 */
+	private static boolean isBelow(double bound, double threshold) {
+		return bound * (1 + 1e-9) < threshold;
+	}
+
+	/**
+	 * Walks through the postings of one word in order of document id.
+	 */
+	private static class Cursor {
+		/**
+		 * the document id to positions map of the word
+		 */
+		private final TreeMap<Integer, PositionList> postings;
+
+		/**
+		 * highest score the word adds to any document
+		 */
+		private final double bound;
+
+		/**
+		 * the remaining postings
+		 */
+		private Iterator<Map.Entry<Integer, PositionList>> iterator;
+
+		/**
+		 * the current posting, null once every posting has been seen
+		 */
+		private Map.Entry<Integer, PositionList> current;
+
+		/**
+		 * constructor
+		 *
+		 * @param postings the document id to positions map of the word
+		 * @param bound    highest score the word adds to any document
+		 */
+		public Cursor(TreeMap<Integer, PositionList> postings, double bound) {
+			this.postings = postings;
+			this.bound = bound;
+			this.iterator = postings.entrySet().iterator();
+			next();
+		}
+
+		/**
+		 * Returns the current document id
+		 *
+		 * @return the document id, or {@link Integer#MAX_VALUE} once every posting
+		 *         has been seen
+		 */
+		public int id() {
+			return current != null ? current.getKey() : Integer.MAX_VALUE;
+		}
+
+		/**
+		 * Returns the number of times the word appears in the current document
+		 *
+		 * @return int
+		 */
+		public int count() {
+			return current.getValue().size();
+		}
+
+		/**
+		 * Moves to the next posting.
+		 */
+		public void next() {
+			current = iterator.hasNext() ? iterator.next() : null;
+		}
+
+		/**
+		 * Moves to the first posting with a document id of at least the target,
+		 * skipping the postings in between without visiting them.
+		 *
+		 * @param target the document id to move to
+		 */
+		public void seek(int target) {
+			if (id() < target) {
+				iterator = postings.tailMap(target, true).entrySet().iterator();
+				next();
+			}
+		}
+	}
+
+	/**
+	 * Compares two documents the same way {@link Result#compareTo(Result)} would
+	 * compare their results, without creating the results.
+	 *
+	 * @param a       the first document id
+	 * @param b       the second document id
+	 * @param matches the matches of each document id
+	 * @return negative if the first document ranks higher
+	 */
+	private int compareMatches(int a, int b, int[] matches) {
+		double scoreA = (double) matches[a] / documents.getCount(a);
+		double scoreB = (double) matches[b] / documents.getCount(b);
+
+		if (Double.compare(scoreA, scoreB) == 0) {
+			if (matches[a] == matches[b]) {
+				return documents.getLocation(a).compareToIgnoreCase(documents.getLocation(b));
+			}
+			return Integer.compare(matches[b], matches[a]);
+		}
+		return Double.compare(scoreB, scoreA);
+	}
+
+	/**
+	 * Returns the sorted array of words, bringing it up to date first if the
+	 * index changed since it was last built. The array of words is only built
+	 * again if a word was added, and only the bounds and document ids of the words
+	 * that changed are found again. Safe to call from multiple readers at once.
+	 *
+	 * @return the term dictionary of the index
+	 */
+	private TermDictionary getDictionary() {
+		TermDictionary terms = dictionary;
+		if (terms != null && fresh) {
+			return terms;
+		}
+
+		synchronized (changedWords) {
+			terms = dictionary;
+
+			if (terms == null) {
+				terms = new TermDictionary(index, documents);
+			} else if (newWords) {
+				terms = new TermDictionary(index, documents, terms, changedWords);
+			} else if (!changedWords.isEmpty()) {
+				terms = terms.update(changedWords, documents);
+			}
+
+			changedWords.clear();
+			newWords = false;
+			dictionary = terms;
+			fresh = true;
+		}
+
+		return terms;
+	}
+
+	/**
+	 * Returns which of the parts a word belongs to when splitting an index by
+	 * word.
+	 *
+	 * @param word  the word to place
+	 * @param parts the number of parts
+	 * @return the part of the word, from 0 to parts - 1
+	 */
+	public static int part(String word, int parts) {
+		return Math.floorMod(word.hashCode(), parts);
+	}
+
+	/**
+	 * Splits the index into parts by word using {@link #part(String, int)}. Each
+	 * part stores the full count, snippet, and time crawled of the documents it
+	 * contains, so each part scores results the same as the whole index. Position
+	 * lists are shared, not copied.
+	 *
+	 * @param parts the number of parts
+	 * @return the parts of the index
+	 */
+	public InvertedIndex[] split(int parts) {
+		InvertedIndex[] split = new InvertedIndex[parts];
+		int[][] ids = new int[parts][documents.size()];
+
+		for (int i = 0; i < parts; i++) {
+			split[i] = new InvertedIndex();
+			Arrays.fill(ids[i], -1);
+		}
+
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+			int i = part(word.getKey(), parts);
+			TreeMap<Integer, PositionList> local = new TreeMap<Integer, PositionList>();
+
+			for (Map.Entry<Integer, PositionList> posting : word.getValue().entrySet()) {
+				int id = posting.getKey();
+				if (documents.isRemoved(id)) {
+					continue;
+				}
+
+				if (ids[i][id] < 0) {
+					ids[i][id] = split[i].documents.add(documents.getLocation(id));
+					split[i].documents.setCount(ids[i][id], documents.getCount(id));
+					split[i].documents.setSnippet(ids[i][id], documents.getSnippet(id));
+					split[i].documents.setTimestamp(ids[i][id], documents.getTimestamp(id));
+				}
+				local.put(ids[i][id], posting.getValue());
+			}
+
+			if (!local.isEmpty()) {
+				split[i].index.put(word.getKey(), local);
+			}
+		}
+
+		return split;
+	}
+
+	/**
+	 * Splits the index into parts by location using {@link #part(String, int)},
+	 * so every word of a document ends up in the same part. Position lists are
+	 * shared, not copied.
+	 *
+	 * @param parts the number of parts
+	 * @return the parts of the index
+	 */
+	public InvertedIndex[] splitByLocation(int parts) {
+		InvertedIndex[] split = new InvertedIndex[parts];
+		int[] owners = new int[documents.size()];
+		int[] ids = new int[documents.size()];
+
+		for (int i = 0; i < parts; i++) {
+			split[i] = new InvertedIndex();
+		}
+
+		for (int id = 0; id < documents.size(); id++) {
+			if (documents.isRemoved(id)) {
+				continue;
+			}
+
+			int i = part(documents.getLocation(id), parts);
+			owners[id] = i;
+			ids[id] = split[i].documents.add(documents.getLocation(id));
+			split[i].documents.setCount(ids[id], documents.getCount(id));
+			split[i].documents.setSnippet(ids[id], documents.getSnippet(id));
+			split[i].documents.setTimestamp(ids[id], documents.getTimestamp(id));
+		}
+
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+			for (Map.Entry<Integer, PositionList> posting : word.getValue().entrySet()) {
+				int id = posting.getKey();
+				if (documents.isRemoved(id)) {
+					continue;
+				}
+
+				split[owners[id]].index.computeIfAbsent(word.getKey(), key -> new TreeMap<Integer, PositionList>())
+						.put(ids[id], posting.getValue());
+			}
+		}
+
+		return split;
+	}
+
+	/**
+	 * Takes the index generated by a worker queue and combines it with overall
+	 * index. Position lists of the other index are shared rather than copied, and
+	 * are never modified, so the other index can still be searched afterwards.
+	 * Documents removed from the other index are skipped.
+	 *
+	 * @param other the index to add to current index
+	 */
+	public void combineIndex(InvertedIndex other) {
+		// the other index numbered its documents on its own, so map its ids to ours
+		int[] ids = new int[other.documents.size()];
+		for (int otherId = 0; otherId < ids.length; otherId++) {
+			ids[otherId] = other.documents.isRemoved(otherId) ? -1
+					: documents.add(other.documents.getLocation(otherId));
+		}
+
+		for (String word : other.index.keySet()) {
+			TreeMap<Integer, PositionList> inner = other.index.get(word);
+			TreeMap<Integer, PositionList> local = this.index.get(word);
+			changed(word, local == null);
+
+			for (int otherId : inner.keySet()) {
+				int id = ids[otherId];
+				if (id < 0) {
+					continue;
+				}
+
+				if (local == null) {
+					local = new TreeMap<Integer, PositionList>();
+					this.index.put(word, local);
+				}
+
+				if (local.containsKey(id)) {
+					PositionList merged = new PositionList();
+					merged.addAll(local.get(id));
+					merged.addAll(inner.get(otherId));
+					local.put(id, merged);
+				} else {
+					local.put(id, inner.get(otherId));
+				}
+			}
+		}
+
+		for (int otherId = 0; otherId < ids.length; otherId++) {
+			int id = ids[otherId];
+			if (id < 0) {
+				continue;
+			}
+
+			if (documents.getCount(id) < other.documents.getCount(otherId)) {
+				documents.setCount(id, other.documents.getCount(otherId));
+			}
+
+			if (other.documents.getSnippet(otherId) != null) {
+				documents.setSnippet(id, other.documents.getSnippet(otherId));
+				documents.setTimestamp(id, other.documents.getTimestamp(otherId));
+			}
+		}
+
+		changed();
 	}
 
 	/**
@@ -351,7 +1515,7 @@ public class InvertedIndex {
 	 * @author CS 272 Software Development (University of San Francisco)
 	 * @version Fall 2021
 	 */
-	public class Result implements Comparable<Result> {
+	public static class Result implements Comparable<Result> {
 		/**
 		 * count number of times query word appears in result path
 		 */
@@ -360,6 +1524,10 @@ public class InvertedIndex {
 		 * score that will help rank results (totalMatches in file / size of file)
 		 */
 		private double score;
+		/**
+		 * total number of words in the path
+		 */
+		private int total;
 		/**
 		 * the path where word was found
 		 */
@@ -383,6 +1551,7 @@ public class InvertedIndex {
 		public Result(String where, String snippet, String timestamp) {
 			this.count = 0;
 			this.score = 0;
+			this.total = 0;
 			this.where = where;
 			this.snippet = snippet;
 			this.timestamp = timestamp;
@@ -411,13 +1580,27 @@ public class InvertedIndex {
 		}
 
 		/**
-		 * used to update the score of the Result
+		 * used to update the score of the Result with the matches of one more word
 		 *
-		 * @param word word of results to update
+		 * @param matches number of times the word appears in the path
+		 * @param total   total number of words in the path
 		 */
-		private void update(String word) {
-			this.count += index.get(word).get(where).size();
-			this.score = (double) this.count / counts.get(where);
+		void update(int matches, int total) {
+			this.count += matches;
+			this.total = total;
+			this.score = (double) this.count / total;
+		}
+
+		/**
+		 * used to combine the Result of the same path found by searching another
+		 * index, as if both indexes had been combined first
+		 *
+		 * @param other the Result for the same path from another index
+		 */
+		void combine(Result other) {
+			this.count += other.count;
+			this.total = Math.max(this.total, other.total);
+			this.score = (double) this.count / this.total;
 		}
 
 		/**
@@ -436,6 +1619,14 @@ public class InvertedIndex {
 			return score;
 		}
 
+		/**
+		 *
+		 * @return total number of words in the path
+		 */
+		public int getTotal() {
+			return total;
+		}
+
 		/**
 		 *
 		 * @return where for result
@@ -0,0 +1,492 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes an inverted index as JSON without going through a {@link Writer} call
+ * for every bracket, tab, and number. Each range of words is written into a
+ * large char buffer that is reused, and whole buffers are handed to the writer
+ * at once. Given a work queue, disjoint ranges of words are written by the
+ * workers at the same time and then written out in order.
+ *
+ * By default the output is the same "pretty" format as
+ * {@link SimpleJsonWriter#asObject(TreeMap, DocumentTable, Path)}, byte for
+ * byte. The output can also be written without whitespace, and compressed with
+ * gzip.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class JsonIndexWriter {
+
+	/** The number of words written into each buffer. */
+	private static final int WORDS_PER_CHUNK = 2048;
+
+	/** The initial size of each buffer, which grows if a range of words needs it. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Whether to write newlines and tabs between elements. */
+	private final boolean pretty;
+
+	/** Whether to compress the output with gzip. */
+	private final boolean gzip;
+
+	/** The work queue used to write ranges of words at the same time, or null. */
+	private final WorkQueue queue;
+
+	/**
+	 * Initializes a writer for the default pretty format, without gzip, using only
+	 * the calling thread.
+	 */
+	public JsonIndexWriter() {
+		this(true, false, null);
+	}
+
+	/**
+	 * Initializes a writer.
+	 *
+	 * @param pretty whether to write newlines and tabs between elements
+	 * @param gzip   whether to compress the output with gzip
+	 * @param queue  the work queue used to write ranges of words at the same time,
+	 *               or null to only use the calling thread
+	 */
+	public JsonIndexWriter(boolean pretty, boolean gzip, WorkQueue queue) {
+		this.pretty = pretty;
+		this.gzip = gzip;
+		this.queue = queue;
+	}
+
+	/**
+	 * Writes the index to the path. The index must not change while it is being
+	 * written.
+	 *
+	 * @param index     the word to document id to positions map of the index
+	 * @param documents the document table used to look up locations
+	 * @param path      the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public void write(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents, Path path)
+			throws IOException {
+		try (OutputStream out = open(path);
+				Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			write(index, documents, writer);
+		}
+	}
+
+	/**
+	 * Writes the index to the writer. The index must not change while it is being
+	 * written.
+	 *
+	 * @param index     the word to document id to positions map of the index
+	 * @param documents the document table used to look up locations
+	 * @param writer    the writer to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public void write(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents, Writer writer)
+			throws IOException {
+		Locations locations = new Locations(documents);
+		writer.write('{');
+
+		if (queue == null) {
+			Chunk chunk = new Chunk(new char[BUFFER_SIZE], true);
+			for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+				chunk.word(word.getKey(), word.getValue(), locations);
+				if (chunk.length >= BUFFER_SIZE) {
+					chunk.writeTo(writer);
+				}
+			}
+			chunk.writeTo(writer);
+		} else {
+			writeParallel(index, locations, writer);
+		}
+
+		writer.write(pretty ? "\n}" : "}");
+	}
+
+	/**
+	 * Hands ranges of words to the work queue and writes each range once it is
+	 * done, in order. Only a few ranges are waiting at a time, so the whole output
+	 * is never held in memory, and their buffers are reused.
+	 *
+	 * @param index     the word to document id to positions map of the index
+	 * @param locations the quoted locations sorted by location
+	 * @param writer    the writer to use
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeParallel(TreeMap<String, TreeMap<Integer, PositionList>> index, Locations locations,
+			Writer writer) throws IOException {
+		// writing is not waiting on anything, so more ranges than processors do not help
+		int threads = Math.min(queue.size(), Runtime.getRuntime().availableProcessors());
+		int ahead = Math.max(2, threads * 2);
+		ArrayDeque<Chunk> pending = new ArrayDeque<Chunk>();
+		ArrayDeque<char[]> buffers = new ArrayDeque<char[]>();
+		ArrayList<Map.Entry<String, TreeMap<Integer, PositionList>>> words = new ArrayList<>(WORDS_PER_CHUNK);
+		boolean first = true;
+
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> word : index.entrySet()) {
+			words.add(word);
+
+			if (words.size() == WORDS_PER_CHUNK) {
+				if (pending.size() == ahead) {
+					buffers.add(pending.poll().await(writer));
+				}
+				pending.add(submit(words, locations, reuse(buffers), first));
+				words = new ArrayList<>(WORDS_PER_CHUNK);
+				first = false;
+			}
+		}
+
+		if (!words.isEmpty()) {
+			pending.add(submit(words, locations, reuse(buffers), first));
+		}
+
+		while (!pending.isEmpty()) {
+			pending.poll().await(writer);
+		}
+	}
+
+	/**
+	 * Returns a buffer that was already written out, or a new one.
+	 *
+	 * @param buffers the buffers already written out
+	 * @return a buffer to write into
+	 */
+	private static char[] reuse(ArrayDeque<char[]> buffers) {
+		return buffers.isEmpty() ? new char[BUFFER_SIZE] : buffers.poll();
+	}
+
+	/**
+	 * Hands a range of words to the work queue, or writes it on this thread if
+	 * the work queue is full and rejects tasks, since every range must be written.
+	 *
+	 * @param words     the range of words to write
+	 * @param locations the quoted locations sorted by location
+	 * @param buffer    the buffer to write into
+	 * @param first     whether the range starts with the first word of the index
+	 * @return the range, which is written once it is done
+	 */
+	private Chunk submit(List<Map.Entry<String, TreeMap<Integer, PositionList>>> words, Locations locations,
+			char[] buffer, boolean first) {
+		Chunk chunk = new Chunk(buffer, first);
+		queue.executeOrRun(() -> {
+			try {
+				for (Map.Entry<String, TreeMap<Integer, PositionList>> word : words) {
+					chunk.word(word.getKey(), word.getValue(), locations);
+				}
+				chunk.done(null);
+			} catch (RuntimeException | Error e) {
+				chunk.done(e);
+				throw e;
+			}
+		}, WorkQueue.Priority.NORMAL);
+		return chunk;
+	}
+
+	/**
+	 * Opens the path for writing, compressing with gzip if asked to.
+	 *
+	 * @param path the file path to use
+	 * @return the stream to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	private OutputStream open(Path path) throws IOException {
+		OutputStream out = Files.newOutputStream(path);
+		return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+	}
+
+	/**
+	 * The quoted location of each document id, and the order of the document ids
+	 * when sorted by location, found once for the whole index.
+	 */
+	private static class Locations {
+		/** The location of each document id, escaped and in quotes. */
+		private final char[][] quoted;
+
+		/** The position of each document id when sorted by location. */
+		private final int[] rank;
+
+		/**
+		 * constructor
+		 *
+		 * @param documents the document table used to look up locations
+		 */
+		public Locations(DocumentTable documents) {
+			int size = documents.size();
+			quoted = new char[size][];
+			rank = new int[size];
+
+			Integer[] sorted = new Integer[size];
+			for (int id = 0; id < size; id++) {
+				sorted[id] = id;
+				quoted[id] = ("\"" + SimpleJsonWriter.escape(documents.getLocation(id)) + "\"").toCharArray();
+			}
+
+			Arrays.sort(sorted, Comparator.comparing(documents::getLocation));
+			for (int i = 0; i < size; i++) {
+				rank[sorted[i]] = i;
+			}
+		}
+	}
+
+	/**
+	 * A buffer holding a range of words written as JSON, which the work queue
+	 * fills and the calling thread writes out once it is done.
+	 */
+	private class Chunk {
+		/** The characters written so far. */
+		private char[] buffer;
+
+		/** The number of characters written so far. */
+		private int length;
+
+		/** Whether the next word is the first word of the index. */
+		private boolean first;
+
+		/** Whether the range has been written into the buffer. */
+		private boolean done;
+
+		/** The exception thrown while writing the range, or null. */
+		private Throwable error;
+
+		/**
+		 * constructor
+		 *
+		 * @param buffer the buffer to write into
+		 * @param first  whether the range starts with the first word of the index
+		 */
+		public Chunk(char[] buffer, boolean first) {
+			this.buffer = buffer;
+			this.length = 0;
+			this.first = first;
+			this.done = false;
+		}
+
+		/**
+		 * Writes one word and its postings, sorted by location.
+		 *
+		 * @param word      the word to write
+		 * @param postings  the document id to positions map of the word
+		 * @param locations the quoted locations sorted by location
+		 */
+		public void word(String word, TreeMap<Integer, PositionList> postings, Locations locations) {
+			// sort by the rank of the location, keeping where each posting came from
+			long[] sorted = new long[postings.size()];
+			int[] ids = new int[postings.size()];
+			PositionList[] lists = new PositionList[postings.size()];
+			int i = 0;
+			for (Map.Entry<Integer, PositionList> posting : postings.entrySet()) {
+				ids[i] = posting.getKey();
+				lists[i] = posting.getValue();
+				sorted[i] = (long) locations.rank[ids[i]] << 32 | i;
+				i++;
+			}
+			Arrays.sort(sorted);
+
+			separator(first, 1);
+			first = false;
+			quote(word);
+			append(pretty ? ": {" : ":{");
+
+			for (int j = 0; j < sorted.length; j++) {
+				int posting = (int) sorted[j];
+				separator(j == 0, 2);
+				append(locations.quoted[ids[posting]]);
+				append(pretty ? ": [" : ":[");
+
+				int[] positions = lists[posting].toIntArray();
+				for (int k = 0; k < positions.length; k++) {
+					separator(k == 0, 3);
+					number(positions[k]);
+				}
+
+				close(']', 2);
+			}
+
+			close('}', 1);
+		}
+
+		/**
+		 * Writes what comes before an element: a comma unless it is the first one,
+		 * then a newline and tabs when pretty.
+		 *
+		 * @param first whether the element is the first one
+		 * @param level the indent level of the element
+		 */
+		private void separator(boolean first, int level) {
+			if (!first) {
+				append(',');
+			}
+			if (pretty) {
+				append('\n');
+				tabs(level);
+			}
+		}
+
+		/**
+		 * Writes the closing bracket of an object or array.
+		 *
+		 * @param bracket the bracket to write
+		 * @param level   the indent level of the bracket
+		 */
+		private void close(char bracket, int level) {
+			if (pretty) {
+				append('\n');
+				tabs(level);
+			}
+			append(bracket);
+		}
+
+		/**
+		 * Writes tabs.
+		 *
+		 * @param level the number of tabs
+		 */
+		private void tabs(int level) {
+			ensure(level);
+			Arrays.fill(buffer, length, length + level, '\t');
+			length += level;
+		}
+
+		/**
+		 * Writes the text in quotes, escaped.
+		 *
+		 * @param text the text to write
+		 */
+		private void quote(String text) {
+			append('"');
+			append(SimpleJsonWriter.escape(text));
+			append('"');
+		}
+
+		/**
+		 * Writes a number without creating a string for it.
+		 *
+		 * @param value the number to write
+		 */
+		private void number(int value) {
+			if (value < 0) {
+				append(Integer.toString(value));
+				return;
+			}
+
+			int digits = 1;
+			for (int rest = value / 10; rest > 0; rest /= 10) {
+				digits++;
+			}
+
+			ensure(digits);
+			for (int i = length + digits - 1; i >= length; i--) {
+				buffer[i] = (char) ('0' + value % 10);
+				value /= 10;
+			}
+			length += digits;
+		}
+
+		/**
+		 * Writes a character.
+		 *
+		 * @param c the character to write
+		 */
+		private void append(char c) {
+			ensure(1);
+			buffer[length++] = c;
+		}
+
+		/**
+		 * Writes the text.
+		 *
+		 * @param text the text to write
+		 */
+		private void append(String text) {
+			ensure(text.length());
+			text.getChars(0, text.length(), buffer, length);
+			length += text.length();
+		}
+
+		/**
+		 * Writes the characters.
+		 *
+		 * @param chars the characters to write
+		 */
+		private void append(char[] chars) {
+			ensure(chars.length);
+			System.arraycopy(chars, 0, buffer, length, chars.length);
+			length += chars.length;
+		}
+
+		/**
+		 * Grows the buffer if it can not fit more characters.
+		 *
+		 * @param more the number of characters about to be written
+		 */
+		private void ensure(int more) {
+			if (length + more > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+			}
+		}
+
+		/**
+		 * Writes the characters to the writer and empties the buffer.
+		 *
+		 * @param writer the writer to use
+		 * @throws IOException if an IO error occurs
+		 */
+		public void writeTo(Writer writer) throws IOException {
+			writer.write(buffer, 0, length);
+			length = 0;
+		}
+
+		/**
+		 * Marks the range as written into the buffer.
+		 *
+		 * @param error the exception thrown while writing the range, or null
+		 */
+		public synchronized void done(Throwable error) {
+			this.error = error;
+			this.done = true;
+			notifyAll();
+		}
+
+		/**
+		 * Waits until the range has been written into the buffer, then writes it to
+		 * the writer.
+		 *
+		 * @param writer the writer to use
+		 * @return the buffer, so it can be used again
+		 * @throws IOException if an IO error occurs or the range could not be
+		 *                     written
+		 */
+		public char[] await(Writer writer) throws IOException {
+			synchronized (this) {
+				try {
+					while (!done) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while writing the index", e);
+				}
+			}
+
+			if (error != null) {
+				throw new IOException("Unable to write the index", error);
+			}
+
+			writeTo(writer);
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,348 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only inverted index served straight from a memory-mapped segment file.
+ * Nothing but the mapping is kept on the heap, so the operating system page
+ * cache decides which parts of the segment stay in memory. The segment only
+ * stores what search needs: the number of times each word appears in each
+ * document, not the positions.
+ *
+ * <pre>
+ * header:    magic, version, documents, words, documents offset, words offset
+ * offsets:   one long per document, then one long per word
+ * documents: count, time crawled (millis or -1), location, snippet (-1 if none)
+ * words:     word, number of postings, postings offset (sorted by word)
+ * postings:  document id, count (sorted by document id)
+ * </pre>
+ *
+ * All numbers are big-endian ints and longs, and strings are an int length
+ * followed by UTF-8 bytes. A segment must be smaller than 2GB since it is mapped
+ * as a single buffer.
+ *
+ * This class is thread-safe since the mapped buffer is only read using absolute
+ * offsets.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class MappedIndexSegment implements SearchableIndex {
+
+	/** The first bytes of every segment file ("SEG1"). */
+	private static final int MAGIC = 0x53454731;
+
+	/** The version of the segment format. */
+	private static final int VERSION = 1;
+
+	/** The size of the header in bytes. */
+	private static final int HEADER = 32;
+
+	/** The mapped segment file. */
+	private final MappedByteBuffer buffer;
+
+	/** The number of words in the segment. */
+	private final int words;
+
+	/** Offset of the document offsets. */
+	private final long documentsOffset;
+
+	/** Offset of the word offsets. */
+	private final long wordsOffset;
+
+	/**
+	 * Maps the segment file into memory.
+	 *
+	 * @param path the segment file to map
+	 * @throws IOException if an IO error occurs or the file is not a segment
+	 */
+	public MappedIndexSegment(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not a mappable index segment: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an index segment: " + path);
+		}
+
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported index segment version " + buffer.getInt(4) + ": " + path);
+		}
+
+		words = buffer.getInt(12);
+		documentsOffset = buffer.getLong(16);
+		wordsOffset = buffer.getLong(24);
+	}
+
+	/**
+	 * Returns number of words in the segment
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return words;
+	}
+
+	/**
+	 * checks if segment contains a specific word.
+	 *
+	 * @param word word to look for
+	 * @return true if the word is stored in segment
+	 */
+	public boolean contains(String word) {
+		int found = lowerBound(word);
+		return found < words && getWord(found).equals(word);
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> exactSearch(Set<String> queries) {
+		ArrayList<InvertedIndex.Result> results = new ArrayList<InvertedIndex.Result>();
+		HashMap<Integer, InvertedIndex.Result> searchResults = new HashMap<Integer, InvertedIndex.Result>();
+
+		for (String query : queries) {
+			int found = lowerBound(query);
+			if (found < words && getWord(found).equals(query)) {
+				searchHelper(found, results, searchResults);
+			}
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> partialSearch(Set<String> queries) {
+		ArrayList<InvertedIndex.Result> results = new ArrayList<InvertedIndex.Result>();
+		HashMap<Integer, InvertedIndex.Result> searchResults = new HashMap<Integer, InvertedIndex.Result>();
+
+		for (String queryLine : queries) {
+			for (int word = lowerBound(queryLine); word < words; word++) {
+				if (!getWord(word).startsWith(queryLine)) {
+					break;
+				}
+				searchHelper(word, results, searchResults);
+			}
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Adds the postings of the word to the results, creating a result the first
+	 * time a document is seen.
+	 *
+	 * @param word          the number of the word in the segment
+	 * @param results       the list to store results
+	 * @param searchResults map of document id to results seen so far
+	 */
+	private void searchHelper(int word, ArrayList<InvertedIndex.Result> results,
+			HashMap<Integer, InvertedIndex.Result> searchResults) {
+		int entry = wordEntry(word);
+		int length = buffer.getInt(entry);
+		int postings = buffer.getInt(entry + 4 + length);
+		int offset = (int) buffer.getLong(entry + 8 + length);
+
+		for (int i = 0; i < postings; i++) {
+			int id = buffer.getInt(offset);
+			int count = buffer.getInt(offset + 4);
+			offset += 8;
+
+			InvertedIndex.Result result = searchResults.get(id);
+
+			if (result == null) {
+				int document = documentEntry(id);
+				long crawled = buffer.getLong(document + 4);
+				String location = getString(document + 12);
+				int snippetOffset = document + 16 + buffer.getInt(document + 12);
+				String snippet = buffer.getInt(snippetOffset) < 0 ? null : getString(snippetOffset);
+
+				result = new InvertedIndex.Result(location, snippet != null ? snippet : "No preview available",
+						crawled >= 0 ? new Timestamp(crawled).toString() : "unknown");
+				searchResults.put(id, result);
+				results.add(result);
+			}
+
+			result.update(count, buffer.getInt(documentEntry(id)));
+		}
+	}
+
+	/**
+	 * Returns the number of the first word that is not less than the key, or the
+	 * number of words if there is none.
+	 *
+	 * @param key the word or prefix to look for
+	 * @return the number of the first word not less than the key
+	 */
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = words;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getWord(middle).compareTo(key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the offset of the entry for the word.
+	 *
+	 * @param word the number of the word
+	 * @return offset of the word entry
+	 */
+	private int wordEntry(int word) {
+		return (int) buffer.getLong((int) wordsOffset + word * 8);
+	}
+
+	/**
+	 * Returns the offset of the entry for the document.
+	 *
+	 * @param id the id of the document
+	 * @return offset of the document entry
+	 */
+	private int documentEntry(int id) {
+		return (int) buffer.getLong((int) documentsOffset + id * 8);
+	}
+
+	/**
+	 * Returns the word.
+	 *
+	 * @param word the number of the word
+	 * @return the word
+	 */
+	private String getWord(int word) {
+		return getString(wordEntry(word));
+	}
+
+	/**
+	 * Decodes the string stored at the offset.
+	 *
+	 * @param offset the offset of the string length
+	 * @return the string
+	 */
+	private String getString(int offset) {
+		byte[] bytes = new byte[buffer.getInt(offset)];
+		buffer.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the index and document table as a segment file.
+	 *
+	 * @param index     the word to document id to positions map
+	 * @param documents the document table of the index
+	 * @param path      the file path to use
+	 * @throws IOException if an IO error occurs or the segment would be too large
+	 *                     to map
+	 */
+	public static void write(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents,
+			Path path) throws IOException {
+		byte[][] locations = new byte[documents.size()][];
+		byte[][] snippets = new byte[documents.size()][];
+		byte[][] keys = new byte[index.size()][];
+
+		long documentsOffset = HEADER;
+		long wordsOffset = documentsOffset + 8L * documents.size();
+		long offset = wordsOffset + 8L * index.size();
+
+		long[] documentEntries = new long[documents.size()];
+		for (int id = 0; id < documents.size(); id++) {
+			locations[id] = documents.getLocation(id).getBytes(StandardCharsets.UTF_8);
+			String snippet = documents.getSnippet(id);
+			snippets[id] = snippet != null ? snippet.getBytes(StandardCharsets.UTF_8) : null;
+
+			documentEntries[id] = offset;
+			offset += 20 + locations[id].length + (snippets[id] != null ? snippets[id].length : 0);
+		}
+
+		long[] wordEntries = new long[index.size()];
+		int word = 0;
+		for (String key : index.keySet()) {
+			keys[word] = key.getBytes(StandardCharsets.UTF_8);
+			wordEntries[word] = offset;
+			offset += 16 + keys[word].length;
+			word++;
+		}
+
+		long postingsOffset = offset;
+		for (TreeMap<Integer, PositionList> postings : index.values()) {
+			offset += 8L * postings.size();
+		}
+
+		if (offset > Integer.MAX_VALUE) {
+			throw new IOException("Index is too large for a single segment: " + path);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(documents.size());
+			out.writeInt(index.size());
+			out.writeLong(documentsOffset);
+			out.writeLong(wordsOffset);
+
+			for (long entry : documentEntries) {
+				out.writeLong(entry);
+			}
+			for (long entry : wordEntries) {
+				out.writeLong(entry);
+			}
+
+			for (int id = 0; id < documents.size(); id++) {
+				Timestamp timestamp = documents.getTimestamp(id);
+				out.writeInt(documents.getCount(id));
+				out.writeLong(timestamp != null ? timestamp.getTime() : -1);
+				out.writeInt(locations[id].length);
+				out.write(locations[id]);
+
+				if (snippets[id] != null) {
+					out.writeInt(snippets[id].length);
+					out.write(snippets[id]);
+				} else {
+					out.writeInt(-1);
+				}
+			}
+
+			word = 0;
+			for (TreeMap<Integer, PositionList> postings : index.values()) {
+				out.writeInt(keys[word].length);
+				out.write(keys[word]);
+				out.writeInt(postings.size());
+				out.writeLong(postingsOffset);
+				postingsOffset += 8L * postings.size();
+				word++;
+			}
+
+			for (TreeMap<Integer, PositionList> postings : index.values()) {
+				for (Map.Entry<Integer, PositionList> posting : postings.entrySet()) {
+					out.writeInt(posting.getKey());
+					out.writeInt(posting.getValue().size());
+				}
+			}
+		}
+	}
+}
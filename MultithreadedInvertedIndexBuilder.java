@@ -1,8 +1,15 @@
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
  * Class responsible for running building the multithreaded inverted index.
@@ -12,9 +19,17 @@ import java.util.List;
  * @version Fall 2021
  */
 public class MultithreadedInvertedIndexBuilder extends InvertedIndexBuilder {
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
 	/**
 	 *
-	 * sets up index based on argument paths
+	 * sets up index based on argument paths. Each file is stemmed into its own
+	 * index and combined into the index by the work queue, so the combines run in
+	 * parallel for the indexes that support it. Files are never dropped because
+	 * the work queue is full, they are stemmed by the calling thread instead.
+	 * Files that can not be read are skipped.
 	 *
 	 * @param queue the work queue to use
 	 * @param index the index to add to
@@ -24,15 +39,22 @@ public class MultithreadedInvertedIndexBuilder extends InvertedIndexBuilder {
 	 */
 	public static void buildIndex(WorkQueue queue, ThreadSafeInvertedIndex index, Path start)
 			throws IOException, InterruptedException {
-		if (Files.isRegularFile(start)) {
-			queue.execute(new Task(start, index));
-		} else {
-			List<Path> allTextFilePaths = TextFileFinder.getTextFiles(start);
-			for (Path path : allTextFilePaths) {
-				queue.execute(new Task(path, index));
+		List<Path> allTextFilePaths = Files.isRegularFile(start) ? List.of(start) : TextFileFinder.getTextFiles(start);
+		ArrayList<CompletableFuture<Void>> stemmed = new ArrayList<>(allTextFilePaths.size());
+
+		for (Path path : allTextFilePaths) {
+			stemmed.add(queue.submitOrRun(new Task(path, index), WorkQueue.Priority.NORMAL));
+		}
+
+		// only waits, the tasks already combined their files into the index
+		for (int i = 0; i < stemmed.size(); i++) {
+			try {
+				stemmed.get(i).join();
+			} catch (CompletionException e) {
+				log.warn("Unable to stem {}: {}", allTextFilePaths.get(i), e.getCause().getMessage());
+				log.catching(Level.DEBUG, e);
 			}
 		}
-		queue.finish();
 	}
 
 	/**
@@ -41,7 +63,7 @@ public class MultithreadedInvertedIndexBuilder extends InvertedIndexBuilder {
 	 * @author Ramneet Kaur
 	 *
 	 */
-	private static class Task implements Runnable {
+	private static class Task implements Callable<Void> {
 
 		/**
 		 * path to traverse to build index
@@ -65,14 +87,16 @@ public class MultithreadedInvertedIndexBuilder extends InvertedIndexBuilder {
 		}
 
 		@Override
-		public void run() {
-			try {
-				InvertedIndex localIndex = new InvertedIndex();
-				InvertedIndexBuilder.stemFile(path, localIndex);
-				index.combineIndex(localIndex);
-			} catch (IOException e) {
-				throw new UncheckedIOException(e);
-			}
+		public Void call() throws IOException {
+			InvertedIndex localIndex = new InvertedIndex();
+			InvertedIndexBuilder.stemFile(path, localIndex);
+			index.combineIndex(localIndex);
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return path.toString();
 		}
 
 	}
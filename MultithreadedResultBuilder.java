@@ -2,13 +2,20 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * ResultBuilder class to execute queries and store results
@@ -18,15 +25,25 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
  * @version Fall 2021
  */
 public class MultithreadedResultBuilder implements ResultBuilderInterface {
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
 	/**
 	 * map of query -> list of results
 	 */
 	private final TreeMap<String, ArrayList<InvertedIndex.Result>> resultMap;
 
+	/**
+	 * map of query -> future results, for queries searched but not collected into
+	 * the result map yet. Only used by the thread adding queries.
+	 */
+	private final LinkedHashMap<String, CompletableFuture<ArrayList<InvertedIndex.Result>>> searches;
+
 	/**
 	 * index to search
 	 */
-	private final ThreadSafeInvertedIndex index;
+	private final SearchableIndex index;
 	/**
 	 * workqueue
 	 */
@@ -35,17 +52,36 @@ public class MultithreadedResultBuilder implements ResultBuilderInterface {
 	 * The lock used to protect concurrent access to the underlying index.
 	 */
 	private final SimpleReadWriteLock lock;
+	/**
+	 * whether every word of a query must match
+	 */
+	private final boolean all;
+
+	/**
+	 * constructor
+	 *
+	 * @param index to perform queries on, must be safe to search from multiple
+	 *              threads
+	 * @param queue the work queue to be used
+	 */
+	public MultithreadedResultBuilder(SearchableIndex index, WorkQueue queue) {
+		this(index, queue, false);
+	}
 
 	/**
 	 * constructor
 	 *
-	 * @param index to perform queries on
+	 * @param index to perform queries on, must be safe to search from multiple
+	 *              threads
 	 * @param queue the work queue to be used
+	 * @param all   whether every word of a query must match
 	 */
-	public MultithreadedResultBuilder(ThreadSafeInvertedIndex index, WorkQueue queue) {
+	public MultithreadedResultBuilder(SearchableIndex index, WorkQueue queue, boolean all) {
 		this.resultMap = new TreeMap<>();
+		this.searches = new LinkedHashMap<>();
 		this.index = index;
 		this.queue = queue;
+		this.all = all;
 		lock = new SimpleReadWriteLock();
 	}
 
@@ -62,7 +98,10 @@ public class MultithreadedResultBuilder implements ResultBuilderInterface {
 	}
 
 	/**
-	 * cleans each line using TextFileStemmer calls the search method
+	 * cleans each line using TextFileStemmer and hands the search to the work
+	 * queue, or searches on this thread if the work queue is full and rejects
+	 * tasks. Each distinct query is only searched once. The results are collected
+	 * by {@link #executeQuery(Path, boolean)}.
 	 *
 	 * @param line    line to be parsed for queries
 	 * @param exact   indicates whether to run exact or partial search
@@ -70,7 +109,13 @@ public class MultithreadedResultBuilder implements ResultBuilderInterface {
 	 */
 	@Override
 	public void executeQuery(String line, boolean exact, Stemmer stemmer) {
-		queue.execute(new QueryTask(line, exact));
+		SearchQuery query = SearchQuery.parse(line, all, stemmer);
+		String cleanedQuery = query.toString();
+		System.out.println(cleanedQuery);
+
+		if (!query.isBlank() && !resultMap.containsKey(cleanedQuery) && !searches.containsKey(cleanedQuery)) {
+			searches.put(cleanedQuery, queue.submitOrRun(new Search(query, exact), WorkQueue.Priority.INTERACTIVE));
+		}
 	}
 
 	/**
@@ -78,85 +123,104 @@ public class MultithreadedResultBuilder implements ResultBuilderInterface {
 	 *
 	 * @param path  path to be parsed for queries
 	 * @param exact indicates whether to run exact or partial search
-	 * @throws IOException when IO exception occurs
+	 * @throws IOException         when IO exception occurs
+	 * @throws CompletionException if any search failed, after the results of the
+	 *                             others are added
 	 */
 	@Override
-	public void executeQuery(Path path, boolean exact) throws IOException {
+	public void executeQuery(Path path, boolean exact) throws IOException, CompletionException {
 		ResultBuilderInterface.super.executeQuery(path, exact);
-		queue.finish();
+		collect();
 	}
 
 	/**
-	 * get unmodifiable keyset for result map
-	 * 
-	 * @return unmodifiable keyset for result map
+	 * Waits for the searches handed to the work queue and adds their results to
+	 * the result map. Every search that failed is logged with its query, and the
+	 * first failure is thrown once the others are collected.
+	 *
+	 * @throws CompletionException if any search failed or was rejected
 	 */
-	public Set<String> getResultMapKeySet() {
-		return Collections.unmodifiableSet(resultMap.keySet());
-	}
+	private void collect() throws CompletionException {
+		CompletionException failed = null;
+		int failures = 0;
+
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<String, CompletableFuture<ArrayList<InvertedIndex.Result>>> search : searches.entrySet()) {
+				try {
+					resultMap.put(search.getKey(), search.getValue().join());
+				} catch (CompletionException e) {
+					log.warn("Unable to search for {}: {}", search.getKey(), e.getCause().getMessage());
+					log.catching(Level.DEBUG, e);
+					failed = failed == null ? e : failed;
+					failures++;
+				}
+			}
 
-	/**
-	 * get unmodifiable list of results for query
-	 * 
-	 * @param query the query who's results to return
-	 * @return list of resuls for query specified
-	 */
-	public List<InvertedIndex.Result> getResultForQuery(String query) {
-		if (resultMap.containsKey(query)) {
-			return Collections.unmodifiableList(resultMap.get(query));
+			searches.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (failed != null) {
+			throw new CompletionException(failures + " of the searches failed", failed.getCause());
 		}
-		return Collections.emptyList();
 	}
 
 	/**
-	 * Task class for WorkQueue
-	 *
-	 * @author Ramneet Kaur
-	 *
+	 * Searches the index for one query. Named after its query, so a search the
+	 * work queue logs can be told apart from the others.
 	 */
-	private class QueryTask implements Runnable {
+	private class Search implements Callable<ArrayList<InvertedIndex.Result>> {
 
-		/**
-		 * query line to execute
-		 */
-		private final String line;
-		/**
-		 * indicates whether to perform exact or partial search
-		 */
+		/** The query to search for. */
+		private final SearchQuery query;
+
+		/** Whether to run exact or partial search. */
 		private final boolean exact;
 
 		/**
-		 * Task class constructor
+		 * Initializes the search.
 		 *
-		 * @param line  the query line to execute
-		 * @param exact indicates whether to perform exact or partial search
+		 * @param query the query to search for
+		 * @param exact whether to run exact or partial search
 		 */
-		public QueryTask(String line, boolean exact) {
-			this.line = line;
+		public Search(SearchQuery query, boolean exact) {
+			this.query = query;
 			this.exact = exact;
 		}
 
 		@Override
-		public void run() {
-			SnowballStemmer stemmer = new SnowballStemmer(TextFileStemmer.ENGLISH);
-			TreeSet<String> queries = (TreeSet<String>) TextFileStemmer.uniqueStems(line, stemmer);
-			String cleanedQuery = String.join(" ", queries);
-			System.out.println(cleanedQuery);
-
-			if (!cleanedQuery.isBlank()) {
-				synchronized (resultMap) {
-					if (resultMap.containsKey(cleanedQuery)) {
-						return;
-					}
-				}
-				ArrayList<InvertedIndex.Result> results = index.search(queries, exact);
-				synchronized (resultMap) {
-					resultMap.put(cleanedQuery, results);
-				}
-			}
+		public ArrayList<InvertedIndex.Result> call() {
+			return query.search(index, exact);
+		}
 
+		@Override
+		public String toString() {
+			return query.toString();
 		}
+	}
 
+	/**
+	 * get unmodifiable keyset for result map
+	 * 
+	 * @return unmodifiable keyset for result map
+	 */
+	public Set<String> getResultMapKeySet() {
+		return Collections.unmodifiableSet(resultMap.keySet());
+	}
+
+	/**
+	 * get unmodifiable list of results for query
+	 * 
+	 * @param query the query who's results to return
+	 * @return list of resuls for query specified
+	 */
+	public List<InvertedIndex.Result> getResultForQuery(String query) {
+		if (resultMap.containsKey(query)) {
+			return Collections.unmodifiableList(resultMap.get(query));
+		}
+		return Collections.emptyList();
 	}
 
 }
\ No newline at end of file
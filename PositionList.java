@@ -0,0 +1,338 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted set of word positions stored in a growable {@code int[]} instead of a
+ * tree of boxed integers. The builders always hand out positions in increasing
+ * order, so adding a position is usually just an append. Positions that arrive
+ * out of order are inserted in place, and duplicates are ignored.
+ *
+ * Once the list is done growing, {@link #compress()} stores the gaps between
+ * positions as variable-byte integers instead, which takes one byte for most
+ * positions. Compressed positions are decoded on demand while iterating, and
+ * the list is decompressed again if more positions are added.
+ *
+ * The {@link java.util.Set} methods are read-only; use {@link #add(int)} and
+ * {@link #addAll(PositionList)} to add positions.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class PositionList extends AbstractSet<Integer> {
+
+	/**
+	 * sorted positions, only the first size elements are used, null when
+	 * compressed
+	 */
+	private int[] positions;
+
+	/**
+	 * variable-byte encoded gaps between positions, null when not compressed
+	 */
+	private byte[] compressed;
+
+	/**
+	 * number of positions stored
+	 */
+	private int size;
+
+	/**
+	 * default constructor
+	 */
+	public PositionList() {
+		positions = new int[4];
+		compressed = null;
+		size = 0;
+	}
+
+	/**
+	 * Copies the positions of the other list.
+	 *
+	 * @param other the list of positions to copy
+	 */
+	public PositionList(PositionList other) {
+		positions = other.positions != null ? Arrays.copyOf(other.positions, Math.max(4, other.size)) : null;
+		compressed = other.compressed;
+		size = other.size;
+	}
+
+	/**
+	 * Stores the positions as delta encoded variable-byte integers. Each gap
+	 * between positions is written 7 bits at a time, lowest bits first, with the
+	 * high bit set on every byte except the last.
+	 */
+	public void compress() {
+		if (compressed != null) {
+			return;
+		}
+
+		byte[] bytes = new byte[size * 5];
+		int length = 0;
+		int previous = 0;
+
+		for (int i = 0; i < size; i++) {
+			int delta = positions[i] - previous;
+			previous = positions[i];
+
+			while ((delta & ~0x7F) != 0) {
+				bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			bytes[length++] = (byte) delta;
+		}
+
+		compressed = Arrays.copyOf(bytes, length);
+		positions = null;
+	}
+
+	/**
+	 * Decodes the compressed positions back into an array so more positions can
+	 * be added.
+	 */
+	private void decompress() {
+		if (compressed != null) {
+			positions = toIntArray();
+			compressed = null;
+		}
+	}
+
+	/**
+	 * Returns true if the positions are stored compressed.
+	 *
+	 * @return boolean
+	 */
+	public boolean isCompressed() {
+		return compressed != null;
+	}
+
+	/**
+	 * Returns a copy of the positions as a sorted array.
+	 *
+	 * @return sorted array of positions
+	 */
+	public int[] toIntArray() {
+		if (compressed == null) {
+			return Arrays.copyOf(positions, size);
+		}
+
+		int[] decoded = new int[size];
+		PositionIterator iterator = new PositionIterator();
+		for (int i = 0; i < size; i++) {
+			decoded[i] = iterator.nextInt();
+		}
+		return decoded;
+	}
+
+	/**
+	 * Adds the position if it is not already stored.
+	 *
+	 * @param position the position to add
+	 * @return true if the position was added
+	 */
+	public boolean add(int position) {
+		decompress();
+
+		if (size > 0 && positions[size - 1] >= position) {
+			int found = Arrays.binarySearch(positions, 0, size, position);
+			if (found >= 0) {
+				return false;
+			}
+			insert(-found - 1, position);
+			return true;
+		}
+
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(4, size * 2));
+		}
+		positions[size++] = position;
+		return true;
+	}
+
+	/**
+	 * Inserts the position at the index, shifting the later positions over.
+	 *
+	 * @param index    the index to insert at
+	 * @param position the position to insert
+	 */
+	private void insert(int index, int position) {
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(4, size * 2));
+		}
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+	}
+
+	/**
+	 * Adds all positions of the other list that are not already stored.
+	 *
+	 * @param other the list of positions to add
+	 * @return true if any position was added
+	 */
+	public boolean addAll(PositionList other) {
+		if (other.size == 0) {
+			return false;
+		}
+
+		decompress();
+		int[] others = other.compressed == null ? other.positions : other.toIntArray();
+
+		// common case, the other list comes after this one
+		if (size == 0 || positions[size - 1] < others[0]) {
+			if (size + other.size > positions.length) {
+				positions = Arrays.copyOf(positions, size + other.size);
+			}
+			System.arraycopy(others, 0, positions, size, other.size);
+			size += other.size;
+			return true;
+		}
+
+		int[] merged = new int[size + other.size];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+
+		while (i < size && j < other.size) {
+			if (positions[i] < others[j]) {
+				merged[k++] = positions[i++];
+			} else if (positions[i] > others[j]) {
+				merged[k++] = others[j++];
+			} else {
+				merged[k++] = positions[i++];
+				j++;
+			}
+		}
+		while (i < size) {
+			merged[k++] = positions[i++];
+		}
+		while (j < other.size) {
+			merged[k++] = others[j++];
+		}
+
+		boolean modified = k > size;
+		positions = merged;
+		size = k;
+		return modified;
+	}
+
+	/**
+	 * Returns the position at the index.
+	 *
+	 * @param index the index of the position, from 0 to size - 1
+	 * @return the position
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+
+		if (compressed != null) {
+			PositionIterator iterator = new PositionIterator();
+			for (int i = 0; i < index; i++) {
+				iterator.nextInt();
+			}
+			return iterator.nextInt();
+		}
+		return positions[index];
+	}
+
+	/**
+	 * Returns true if the position is stored.
+	 *
+	 * @param position the position to look for
+	 * @return boolean
+	 */
+	public boolean contains(int position) {
+		if (compressed != null) {
+			PositionIterator iterator = new PositionIterator();
+			while (iterator.hasNext()) {
+				int next = iterator.nextInt();
+				if (next >= position) {
+					return next == position;
+				}
+			}
+			return false;
+		}
+		return Arrays.binarySearch(positions, 0, size, position) >= 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer && contains(((Integer) o).intValue());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new PositionIterator();
+	}
+
+	/**
+	 * Iterates through the positions in increasing order, decoding compressed
+	 * positions one at a time.
+	 */
+	private class PositionIterator implements Iterator<Integer> {
+		/**
+		 * index of the next position to return
+		 */
+		private int next = 0;
+
+		/**
+		 * offset of the next byte to decode when compressed
+		 */
+		private int offset = 0;
+
+		/**
+		 * last position decoded when compressed
+		 */
+		private int previous = 0;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Integer next() {
+			return nextInt();
+		}
+
+		/**
+		 * Returns the next position without boxing it.
+		 *
+		 * @return the next position
+		 */
+		public int nextInt() {
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			next++;
+
+			if (compressed == null) {
+				return positions[next - 1];
+			}
+
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = compressed[offset++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			previous += delta;
+			return previous;
+		}
+	}
+}
@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeSet;
 
 import org.apache.commons.text.StringEscapeUtils;
 
@@ -33,7 +32,9 @@ public class QueryServlet extends HttpServlet {
 	/**
 	 * index to search
 	 */
-	ThreadSafeInvertedIndex index;
+	SearchableIndex index;
+	/** The number of results shown for a search. */
+	private static final int PAGE_SIZE = 50;
 	/** The title to use for this webpage. */
 	private static final String TITLE = "Cookies!";
 
@@ -58,9 +59,10 @@ public class QueryServlet extends HttpServlet {
 	/**
 	 * Constructor
 	 * 
-	 * @param index the indverted index to be parsed
+	 * @param index the indverted index to be parsed, must be safe to search from
+	 *              multiple threads
 	 */
-	public QueryServlet(ThreadSafeInvertedIndex index) {
+	public QueryServlet(SearchableIndex index) {
 		this.index = index;
 		history = new ArrayList<Map<String, String>>();
 
@@ -107,6 +109,9 @@ public class QueryServlet extends HttpServlet {
 				  </p>
 				  <p>
 				    <input type="checkbox" name="exact" size="50"> Exact search</input>
+				  </p>
+				  <p>
+				    <input type="checkbox" name="all" size="50"> Match all words (use "quotes" for a phrase)</input>
 				  </p>
 				   <p>
 				    <input type="checkbox" name="reverseSort" size="50"> Reverse sort</input>
@@ -144,6 +149,7 @@ public class QueryServlet extends HttpServlet {
 				""";
 
 		String userInput = request.getParameter("query");
+		String rawInput = userInput;
 		String viewHistory = request.getParameter("viewHistory");
 
 		// avoid xss attacks using apache commons text
@@ -179,13 +185,31 @@ public class QueryServlet extends HttpServlet {
 			try {
 				SnowballStemmer stemmer = new SnowballStemmer(TextFileStemmer.ENGLISH);
 
-				TreeSet<String> queries = (TreeSet<String>) TextFileStemmer.uniqueStems(userInput, stemmer);
+				// only stems are searched, so the unescaped input is safe and keeps its quotes
+				SearchQuery query = SearchQuery.parse(rawInput, request.getParameter("all") != null, stemmer);
 
 				long startTime = System.currentTimeMillis();
 
-				ArrayList<InvertedIndex.Result> results = index.search(queries, request.getParameter("exact") != null);
-				if (request.getParameter("reverseSort") != null) {
+				boolean exact = request.getParameter("exact") != null;
+				ArrayList<InvertedIndex.Result> results;
+				String total;
+
+				// only the first page is shown, so avoid sorting every result unless the
+				// worst results have to come first
+				if (query.isPhrase() || request.getParameter("all") != null) {
+					results = query.search(index, exact);
+					total = String.valueOf(results.size());
+					if (request.getParameter("reverseSort") != null) {
+						Collections.reverse(results);
+					}
+				} else if (request.getParameter("reverseSort") != null) {
+					results = query.search(index, exact);
 					Collections.reverse(results);
+					total = String.valueOf(results.size());
+				} else {
+					TopResults top = index.prunedSearch(query.getQueries(), exact, PAGE_SIZE);
+					results = top.getResults();
+					total = top.isTotalExact() ? String.valueOf(top.getTotal()) : "at least " + top.getTotal();
 				}
 
 				// if user has selected i'm feeling lucky button, automatically open the top
@@ -196,8 +220,10 @@ public class QueryServlet extends HttpServlet {
 					}
 				}
 
-				output = String.format(output + resultFormatter(results, startTime, userInput));
+				output = String.format(output + resultFormatter(results, total, startTime, userInput));
 
+			} catch (UnsupportedOperationException e) {
+				userInput = "Error! " + e.getMessage() + ": " + StringEscapeUtils.escapeHtml4(userInput);
 			} catch (Exception e) {
 				userInput = "Error! Unable to search index for for: " + StringEscapeUtils.escapeHtml4(userInput);
 			}
@@ -218,18 +244,20 @@ public class QueryServlet extends HttpServlet {
 	 * Formats the results to be displayed on the webpage
 	 *
 	 * @param results   the list of results to show
+	 * @param total     the number of documents that matched the query, as text
 	 * @param startTime the startTime of the query execution
 	 * @param userInput the user's query
 	 * @return output html
 	 */
-	public String resultFormatter(ArrayList<InvertedIndex.Result> results, long startTime, String userInput) {
+	public String resultFormatter(ArrayList<InvertedIndex.Result> results, String total, long startTime,
+			String userInput) {
 		long endTime = System.currentTimeMillis();
 
 		long searchTime = endTime - startTime;
 
 		String output = String.format("<b> Fetching search results for query: </b>%s%n%n"
 				+ "<b> Number of search results: </b>%s%n%n" + "<b> This search took: </b>%s millisecond(s).%n%n",
-				userInput, results.size(), searchTime);
+				userInput, total, searchTime);
 
 		for (InvertedIndex.Result result : results) {
 			output = String.format(output
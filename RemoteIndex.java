@@ -0,0 +1,206 @@
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Searches an index split by location across other processes, each serving its
+ * part with a {@link ShardServlet}. Every search is sent to every part at the
+ * same time, and the results are merged by location and sorted, so they rank
+ * the same as searching the whole index in one process.
+ *
+ * Parts that can not be reached are logged and skipped, and the total of the
+ * search is then no longer exact.
+ *
+ * This class is thread-safe.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class RemoteIndex implements SearchableIndex {
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** How long to wait to connect to a part. */
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+
+	/** How long to wait for a part to answer a search. */
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	/** The base url of each part, such as http://localhost:8081 */
+	private final List<String> shards;
+
+	/** The client used to send searches. */
+	private final HttpClient client;
+
+	/**
+	 * constructor
+	 *
+	 * @param shards the base url of each part, such as http://localhost:8081
+	 */
+	public RemoteIndex(List<String> shards) {
+		ArrayList<String> bases = new ArrayList<String>();
+		for (String shard : shards) {
+			bases.add(shard.endsWith("/") ? shard.substring(0, shard.length() - 1) : shard);
+		}
+
+		this.shards = List.copyOf(bases);
+		this.client = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+	}
+
+	/**
+	 * Returns the number of parts searched
+	 *
+	 * @return int
+	 */
+	public int shards() {
+		return shards.size();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> exactSearch(Set<String> queries) {
+		return search(SearchType.EXACT, new ArrayList<String>(queries), SearchType.ALL).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> partialSearch(Set<String> queries) {
+		return search(SearchType.PARTIAL, new ArrayList<String>(queries), SearchType.ALL).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> andSearch(Set<String> queries, boolean exact) {
+		return search(exact ? SearchType.AND_EXACT : SearchType.AND_PARTIAL, new ArrayList<String>(queries),
+				SearchType.ALL).getResults();
+	}
+
+	@Override
+	public ArrayList<InvertedIndex.Result> phraseSearch(List<String> phrase) {
+		return search(SearchType.PHRASE, phrase, SearchType.ALL).getResults();
+	}
+
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		return search(SearchType.EXACT, new ArrayList<String>(queries), Math.max(k, 0));
+	}
+
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		return search(SearchType.PARTIAL, new ArrayList<String>(queries), Math.max(k, 0));
+	}
+
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		return search(exact ? SearchType.PRUNED_EXACT : SearchType.PRUNED_PARTIAL, new ArrayList<String>(queries),
+				Math.max(k, 0));
+	}
+
+	/**
+	 * Sends the search to every part and merges the results. Each part returns at
+	 * most its own k best results, which together always contain the k best
+	 * results of the whole index.
+	 *
+	 * @param type  the kind of search
+	 * @param words the stemmed words to search for
+	 * @param k     the number of results to keep, or {@link SearchType#ALL}
+	 * @return the merged results
+	 * @throws UnsupportedOperationException if a part can not run the search
+	 */
+	private TopResults search(SearchType type, List<String> words, int k) {
+		if (words.isEmpty() || k == 0) {
+			return new TopResults(new ArrayList<InvertedIndex.Result>(), 0, words.isEmpty());
+		}
+
+		String query = "/shard?type=" + type.name().toLowerCase(Locale.ROOT) + "&q="
+				+ URLEncoder.encode(String.join(" ", words), StandardCharsets.UTF_8) + "&k=" + k;
+
+		ArrayList<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (String shard : shards) {
+			HttpRequest request = HttpRequest.newBuilder(URI.create(shard + query)).timeout(REQUEST_TIMEOUT).GET()
+					.build();
+			responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+		}
+
+		HashMap<String, InvertedIndex.Result> merged = new HashMap<String, InvertedIndex.Result>();
+		int total = 0;
+		boolean exact = true;
+		String unsupported = null;
+
+		for (int i = 0; i < shards.size(); i++) {
+			try {
+				HttpResponse<String> response = responses.get(i).join();
+
+				if (response.statusCode() == 501) {
+					// the part can not run this kind of search, so the other parts can not stand in
+					unsupported = shards.get(i);
+					continue;
+				}
+
+				if (response.statusCode() != 200) {
+					throw new IllegalStateException("Status " + response.statusCode() + " from " + shards.get(i));
+				}
+
+				Map<String, Object> found = SimpleJsonReader.readObject(response.body());
+				total += ((Number) found.get("total")).intValue();
+				exact &= (Boolean) found.get("exact");
+
+				for (Object element : (List<?>) found.get("results")) {
+					InvertedIndex.Result result = toResult((Map<?, ?>) element);
+					InvertedIndex.Result existing = merged.putIfAbsent(result.getWhere(), result);
+
+					if (existing != null) {
+						existing.combine(result);
+					}
+				}
+			} catch (RuntimeException e) {
+				log.warn("Unable to search {}: {}", shards.get(i), e.getMessage());
+				log.catching(Level.DEBUG, e);
+				exact = false;
+			}
+		}
+
+		if (unsupported != null) {
+			throw new UnsupportedOperationException(
+					"Unable to run " + type.name().toLowerCase(Locale.ROOT) + " searches on " + unsupported);
+		}
+
+		ArrayList<InvertedIndex.Result> results = new ArrayList<InvertedIndex.Result>(merged.values());
+		Collections.sort(results);
+
+		if (k != SearchType.ALL && results.size() > k) {
+			results = new ArrayList<InvertedIndex.Result>(results.subList(0, k));
+		}
+
+		return new TopResults(results, total, exact);
+	}
+
+	/**
+	 * Scores a result from a part again from its count and number of words, so it
+	 * compares the same as the result in the part.
+	 *
+	 * @param element the result as read from JSON
+	 * @return the result
+	 */
+	private static InvertedIndex.Result toResult(Map<?, ?> element) {
+		InvertedIndex.Result result = new InvertedIndex.Result((String) element.get("where"),
+				(String) element.get("snippet"), (String) element.get("timestamp"));
+		result.update(((Number) element.get("count")).intValue(), ((Number) element.get("words")).intValue());
+		return result;
+	}
+}
@@ -2,7 +2,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import opennlp.tools.stemmer.Stemmer;
 
@@ -14,6 +17,9 @@ import opennlp.tools.stemmer.Stemmer;
  * @version Fall 2021
  */
 public class ResultBuilder implements ResultBuilderInterface {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
 	/**
 	 * map of query -> list of results
 	 */
@@ -22,16 +28,45 @@ public class ResultBuilder implements ResultBuilderInterface {
 	/**
 	 * index to search
 	 */
-	private final InvertedIndex index;
+	private final SearchableIndex index;
+
+	/**
+	 * whether every word of a query must match
+	 */
+	private final boolean all;
+
+	/**
+	 * the first search that failed since the queries were last read from a file,
+	 * or null if none did
+	 */
+	private RuntimeException failed;
+
+	/**
+	 * number of searches that failed since the queries were last read from a file
+	 */
+	private int failures;
 
 	/**
 	 * constructor
 	 *
 	 * @param index to perform queries on
 	 */
-	public ResultBuilder(InvertedIndex index) {
+	public ResultBuilder(SearchableIndex index) {
+		this(index, false);
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param index to perform queries on
+	 * @param all   whether every word of a query must match
+	 */
+	public ResultBuilder(SearchableIndex index, boolean all) {
 		this.resultMap = new TreeMap<>();
 		this.index = index;
+		this.all = all;
+		this.failed = null;
+		this.failures = 0;
 	}
 
 	/**
@@ -52,11 +87,34 @@ public class ResultBuilder implements ResultBuilderInterface {
 	 * @param stemmer the stemmer to use to stem query words
 	 */
 	public void executeQuery(String line, boolean exact, Stemmer stemmer) {
-		TreeSet<String> queries = (TreeSet<String>) TextFileStemmer.uniqueStems(line, stemmer);
-		String cleanedQuery = String.join(" ", queries);
+		SearchQuery query = SearchQuery.parse(line, all, stemmer);
+		String cleanedQuery = query.toString();
+
+		if (!query.isBlank() && !resultMap.containsKey(cleanedQuery)) {
+			try {
+				resultMap.put(cleanedQuery, query.search(index, exact));
+			} catch (UnsupportedOperationException e) {
+				log.warn("Unable to search for {}: {}", cleanedQuery, e.getMessage());
+				failed = failed == null ? e : failed;
+				failures++;
+			}
+		}
+	}
+
+	/**
+	 * Executes every query in the file. Queries the index can not search are
+	 * logged and left out of the results, and reported once the others are done.
+	 *
+	 * @throws CompletionException if any search failed
+	 */
+	@Override
+	public void executeQuery(Path path, boolean exact) throws IOException, CompletionException {
+		failed = null;
+		failures = 0;
+		ResultBuilderInterface.super.executeQuery(path, exact);
 
-		if (!cleanedQuery.isBlank() && !resultMap.containsKey(cleanedQuery)) {
-			resultMap.put(cleanedQuery, index.search(queries, exact));
+		if (failed != null) {
+			throw new CompletionException(failures + " of the searches failed", failed);
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A query line after it has been stemmed, along with how it should be matched.
+ * A line wrapped in double quotes is a phrase, matched by documents that contain
+ * its words next to each other and in order. Any other line matches documents
+ * that contain any of its words, or all of them when searching for all words.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class SearchQuery {
+
+	/** The unique stems of the query, sorted. */
+	private final TreeSet<String> queries;
+
+	/** The stems of the phrase in order, or null if the query is not a phrase. */
+	private final List<String> phrase;
+
+	/** Whether every word must match. */
+	private final boolean all;
+
+	/**
+	 * constructor
+	 *
+	 * @param queries the unique stems of the query, sorted
+	 * @param phrase  the stems of the phrase in order, or null if the query is
+	 *                not a phrase
+	 * @param all     whether every word must match
+	 */
+	private SearchQuery(TreeSet<String> queries, List<String> phrase, boolean all) {
+		this.queries = queries;
+		this.phrase = phrase;
+		this.all = all;
+	}
+
+	/**
+	 * Stems the query line and decides how it should be matched.
+	 *
+	 * @param line    the query line
+	 * @param all     whether every word must match, ignored for phrases
+	 * @param stemmer the stemmer to use to stem query words
+	 * @return the parsed query
+	 */
+	public static SearchQuery parse(String line, boolean all, Stemmer stemmer) {
+		String trimmed = line.strip();
+
+		if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+			List<String> phrase = TextFileStemmer.listStems(trimmed, stemmer);
+			return new SearchQuery(new TreeSet<String>(phrase), phrase, true);
+		}
+
+		return new SearchQuery((TreeSet<String>) TextFileStemmer.uniqueStems(line, stemmer), null, all);
+	}
+
+	/**
+	 * Returns the unique stems of the query
+	 *
+	 * @return sorted set of stems
+	 */
+	public TreeSet<String> getQueries() {
+		return queries;
+	}
+
+	/**
+	 * Returns true if the query is a phrase
+	 *
+	 * @return boolean
+	 */
+	public boolean isPhrase() {
+		return phrase != null;
+	}
+
+	/**
+	 * Returns true if the query has no words to search for
+	 *
+	 * @return boolean
+	 */
+	public boolean isBlank() {
+		return queries.isEmpty();
+	}
+
+	/**
+	 * Returns the cleaned query used as the key of the results. Phrases keep their
+	 * words in order and are wrapped in quotes so they do not share results with
+	 * the same words searched any other way.
+	 *
+	 * @return cleaned query
+	 */
+	@Override
+	public String toString() {
+		if (phrase != null) {
+			return "\"" + String.join(" ", phrase) + "\"";
+		}
+		return String.join(" ", queries);
+	}
+
+	/**
+	 * Searches the index for this query.
+	 *
+	 * @param index the index to search
+	 * @param exact whether to perform exact search or partial, ignored for
+	 *              phrases
+	 * @return ArrayList list of results matching the query
+	 */
+	public ArrayList<InvertedIndex.Result> search(SearchableIndex index, boolean exact) {
+		if (phrase != null) {
+			return index.phraseSearch(phrase);
+		}
+
+		if (all) {
+			return index.andSearch(queries, exact);
+		}
+
+		return index.search(queries, exact);
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The kinds of search an index can run, so a search can be named, cached, or
+ * sent to another process and run again later.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public enum SearchType {
+	/** Matches any word exactly. */
+	EXACT,
+	/** Matches any word by prefix. */
+	PARTIAL,
+	/** Matches every word exactly. */
+	AND_EXACT,
+	/** Matches every word by prefix. */
+	AND_PARTIAL,
+	/** Matches the words next to each other and in order. */
+	PHRASE,
+	/** Matches any word exactly, skipping documents that can not make the top k. */
+	PRUNED_EXACT,
+	/** Matches any word by prefix, skipping documents that can not make the top k. */
+	PRUNED_PARTIAL;
+
+	/** Used as the number of results to keep when every result is kept. */
+	public static final int ALL = -1;
+
+	/**
+	 * Returns true if the order of the words matters for this kind of search.
+	 *
+	 * @return boolean
+	 */
+	public boolean isOrdered() {
+		return this == PHRASE;
+	}
+
+	/**
+	 * Runs this kind of search on the index. Top-k searches are used when k is
+	 * not {@link #ALL}; phrase and AND searches always keep every result.
+	 *
+	 * @param index the index to search
+	 * @param words the words to search for
+	 * @param k     the number of results to keep, or {@link #ALL}
+	 * @return the results
+	 */
+	public TopResults search(SearchableIndex index, List<String> words, int k) {
+		TreeSet<String> queries = new TreeSet<String>(words);
+
+		if (k != ALL) {
+			switch (this) {
+				case EXACT:
+					return index.exactSearch(queries, k);
+				case PARTIAL:
+					return index.partialSearch(queries, k);
+				case PRUNED_EXACT:
+					return index.prunedSearch(queries, true, k);
+				case PRUNED_PARTIAL:
+					return index.prunedSearch(queries, false, k);
+				default:
+					break;
+			}
+		}
+
+		ArrayList<InvertedIndex.Result> results = switch (this) {
+			case EXACT, PRUNED_EXACT -> index.exactSearch(queries);
+			case PARTIAL, PRUNED_PARTIAL -> index.partialSearch(queries);
+			case AND_EXACT -> index.andSearch(queries, true);
+			case AND_PARTIAL -> index.andSearch(queries, false);
+			case PHRASE -> index.phraseSearch(words);
+		};
+		return new TopResults(results, results.size());
+	}
+}
@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Search methods shared by the inverted index and the read-only index backends,
+ * so result builders and the servlet can search any of them.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public interface SearchableIndex {
+
+	/**
+	 * Returns a number that changes whenever the results of a search may have
+	 * changed, so cached results can tell when they are out of date. Indexes that
+	 * never change always return 0.
+	 *
+	 * @return the generation of the index
+	 */
+	public default long generation() {
+		return 0;
+	}
+
+	/**
+	 * Exact search method that returns list of results matching input query exactly
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @return ArrayList list of results matching the query
+	 */
+	public ArrayList<InvertedIndex.Result> exactSearch(Set<String> queries);
+
+	/**
+	 * finds all words in index that are partial matches and adds them to results
+	 * output
+	 *
+	 * @param queries the set of words searched for in the index
+	 * @return ArrayList list of results matching the query
+	 */
+	public ArrayList<InvertedIndex.Result> partialSearch(Set<String> queries);
+
+	/**
+	 * method that calls exact or partial search based on value of exact
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @return ArrayList list of results matching the query
+	 */
+	public default ArrayList<InvertedIndex.Result> search(Set<String> queries, boolean exact) {
+		if (!exact) {
+			return partialSearch(queries);
+		} else {
+			return exactSearch(queries);
+		}
+	}
+
+	/**
+	 * Exact search method that only keeps the k best results.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	public default TopResults exactSearch(Set<String> queries, int k) {
+		return TopResults.of(exactSearch(queries), k);
+	}
+
+	/**
+	 * Partial search method that only keeps the k best results.
+	 *
+	 * @param queries the set of words searched for in the index
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	public default TopResults partialSearch(Set<String> queries, int k) {
+		return TopResults.of(partialSearch(queries), k);
+	}
+
+	/**
+	 * method that calls exact or partial search based on value of exact, only
+	 * keeping the k best results
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	public default TopResults search(Set<String> queries, boolean exact, int k) {
+		if (!exact) {
+			return partialSearch(queries, k);
+		} else {
+			return exactSearch(queries, k);
+		}
+	}
+
+	/**
+	 * Searches for the documents that match every word of the query, scored the
+	 * same way as {@link #search(Set, boolean)}. By default each word is searched
+	 * on its own to find the documents that match it.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @return ArrayList list of results matching every word of the query
+	 */
+	public default ArrayList<InvertedIndex.Result> andSearch(Set<String> queries, boolean exact) {
+		ArrayList<InvertedIndex.Result> results = search(queries, exact);
+
+		for (String query : queries) {
+			HashSet<String> found = new HashSet<String>();
+			for (InvertedIndex.Result result : search(Set.of(query), exact)) {
+				found.add(result.getWhere());
+			}
+			results.removeIf(result -> !found.contains(result.getWhere()));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Searches for the documents that contain the words of the phrase next to
+	 * each other and in order, scored by the number of times the phrase appears.
+	 * Indexes that do not store positions can not tell, and throw instead of
+	 * passing off the documents with every word as phrase matches.
+	 *
+	 * @param phrase the stemmed words of the phrase, in order
+	 * @return ArrayList list of results matching the phrase
+	 * @throws UnsupportedOperationException if the index does not store positions
+	 */
+	public default ArrayList<InvertedIndex.Result> phraseSearch(List<String> phrase) {
+		throw new UnsupportedOperationException("Phrases can not be searched in an index without positions");
+	}
+
+	/**
+	 * Searches for the k best results, skipping documents that can not make them
+	 * where the index supports it. The results are the same as
+	 * {@link #search(Set, boolean, int)}, but the total may only be a lower bound.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @param k       the number of results to keep
+	 * @return the k best results and the number of documents that matched
+	 */
+	public default TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		return search(queries, exact, k);
+	}
+}
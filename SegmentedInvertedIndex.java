@@ -0,0 +1,802 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Thread safe inverted index made of immutable segments. The current version
+ * of the index is an unmodifiable list of segments published through an atomic
+ * reference. Writers build a new version and swap it in, and readers search
+ * whatever version they grabbed without taking any lock, so a search never waits
+ * on a build or a merge.
+ *
+ * Every index passed to {@link #combineIndex(InvertedIndex)} becomes a new
+ * segment, and positions added one at a time are published together as one
+ * segment before the next read or update. A background merger thread combines
+ * the smallest segments into larger ones so the number of segments stays
+ * small. Removing a location only
+ * gives the segments that hold it a tombstone, and the merger purges the
+ * tombstones of segments with many removed documents. Searches fan out over the
+ * segments and combine the results for the same path. Methods that need the
+ * whole index at once (such as writing it to file) combine the segments into one
+ * first and publish that as the new version.
+ *
+ * The lock of the parent class is never used, it is only extended so this index
+ * can be used anywhere a {@link ThreadSafeInvertedIndex} is expected.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class SegmentedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The number of segments that starts a background merge. */
+	public static final int MAX_SEGMENTS = 8;
+
+	/** The number of segments combined by each background merge. */
+	public static final int MERGE_FACTOR = 4;
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * The current version of the index. Neither the list nor its segments are
+	 * modified once published.
+	 */
+	private final AtomicReference<List<InvertedIndex>> segments;
+
+	/** Used to wake up the merger when a segment is added. */
+	private final Object mergerLock;
+
+	/**
+	 * Positions added one at a time since the last read or update, published as
+	 * one segment before the next one. Guarded by the pending lock.
+	 */
+	private InvertedIndex pending;
+
+	/** Whether any positions are waiting to be published. */
+	private volatile boolean hasPending;
+
+	/** Used to add to and publish the pending positions. */
+	private final Object pendingLock;
+
+	/**
+	 * initializes a segmented inverted index and starts its background merger
+	 */
+	public SegmentedInvertedIndex() {
+		super();
+		segments = new AtomicReference<List<InvertedIndex>>(Collections.emptyList());
+		mergerLock = new Object();
+		pending = new InvertedIndex();
+		hasPending = false;
+		pendingLock = new Object();
+
+		Merger merger = new Merger();
+		merger.setDaemon(true);
+		merger.start();
+	}
+
+	/**
+	 * Returns the number of segments in the current version.
+	 *
+	 * @return number of segments
+	 */
+	public int segments() {
+		return segments.get().size();
+	}
+
+	/**
+	 * Adds the other index as a new segment. The other index must not be modified
+	 * afterwards.
+	 *
+	 * @param other the index to add to current index
+	 */
+	@Override
+	public void combineIndex(InvertedIndex other) {
+		List<InvertedIndex> current;
+		ArrayList<InvertedIndex> updated;
+
+		flush();
+		do {
+			current = segments.get();
+			updated = new ArrayList<InvertedIndex>(current);
+			updated.add(other);
+		} while (!segments.compareAndSet(current, Collections.unmodifiableList(updated)));
+		changed();
+
+		synchronized (mergerLock) {
+			mergerLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Adds the position to the pending positions, which are published as one
+	 * segment before the next read or update. Builders should still combine a
+	 * local index instead, since every read publishes a segment.
+	 *
+	 * @param word     the word to be added
+	 * @param path     the path where the word was found
+	 * @param position the position where the word was found in the file
+	 */
+	@Override
+	public void add(String word, String path, int position) {
+		synchronized (pendingLock) {
+			if (pending.contains(word, path, position) || containsPublished(word, path, position)) {
+				return;
+			}
+			pending.add(word, path, position);
+			hasPending = true;
+		}
+		changed();
+	}
+
+	/**
+	 * Adds the position to the pending positions, which are published as one
+	 * segment before the next read or update. Builders should still combine a
+	 * local index instead, since every read publishes a segment.
+	 *
+	 * @param word        the word to be added
+	 * @param path        the path where the word was found
+	 * @param position    the position where the word was found in the file
+	 * @param htmlSnippet an html snippet of the url that was crawled
+	 * @param timestamp   the time at which the page was crawled
+	 */
+	@Override
+	public void add(String word, String path, int position, String htmlSnippet, Timestamp timestamp) {
+		synchronized (pendingLock) {
+			if (pending.contains(word, path, position) || containsPublished(word, path, position)) {
+				return;
+			}
+			pending.add(word, path, position, htmlSnippet, timestamp);
+			hasPending = true;
+		}
+		changed();
+	}
+
+	/**
+	 * Returns true if a published segment has the position.
+	 *
+	 * @param word     the word to look for
+	 * @param path     the path to look for
+	 * @param position the position to look for
+	 * @return boolean
+	 */
+	private boolean containsPublished(String word, String path, int position) {
+		for (InvertedIndex segment : segments.get()) {
+			if (segment.contains(word, path, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Publishes the pending positions as a new segment. The words of a path are
+	 * counted on top of the words it already has in the published segments, the
+	 * same as adding them to an index that holds those segments.
+	 */
+	private void flush() {
+		if (!hasPending) {
+			return;
+		}
+
+		synchronized (pendingLock) {
+			if (!hasPending) {
+				return;
+			}
+
+			InvertedIndex segment = pending;
+			Map<String, Integer> added = new HashMap<String, Integer>(segment.getCounts());
+			List<InvertedIndex> current;
+			ArrayList<InvertedIndex> updated;
+
+			do {
+				current = segments.get();
+				for (Map.Entry<String, Integer> entry : added.entrySet()) {
+					int published = 0;
+					for (InvertedIndex other : current) {
+						published = Math.max(published, other.getCount(entry.getKey()));
+					}
+					segment.setCount(entry.getKey(), published + entry.getValue());
+				}
+
+				updated = new ArrayList<InvertedIndex>(current);
+				updated.add(segment);
+			} while (!segments.compareAndSet(current, Collections.unmodifiableList(updated)));
+
+			pending = new InvertedIndex();
+			hasPending = false;
+		}
+
+		synchronized (mergerLock) {
+			mergerLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Publishes the pending positions and returns the current version.
+	 *
+	 * @return the current version
+	 */
+	private List<InvertedIndex> version() {
+		flush();
+		return segments.get();
+	}
+
+	/**
+	 * Returns the whole index as a single segment. If the current version has more
+	 * than one segment they are combined, and the combined segment is published if
+	 * no writer has published a new version in the meantime.
+	 *
+	 * @return the current version as one index
+	 */
+	private InvertedIndex current() {
+		List<InvertedIndex> current = version();
+
+		if (current.size() == 1) {
+			return current.get(0);
+		}
+
+		InvertedIndex merged = merge(current);
+		segments.compareAndSet(current, List.of(merged));
+		return merged;
+	}
+
+	/**
+	 * Combines the segments into a new index, without modifying the segments.
+	 *
+	 * @param inputs the segments to combine
+	 * @return the combined index
+	 */
+	private static InvertedIndex merge(List<InvertedIndex> inputs) {
+		InvertedIndex merged = new InvertedIndex();
+		for (InvertedIndex input : inputs) {
+			merged.combineIndex(input);
+		}
+		return merged;
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Set<String> queries) {
+		ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+		List<InvertedIndex> current = version();
+		for (InvertedIndex segment : current) {
+			found.add(segment.exactSearch(queries));
+		}
+		return combineResults(current, found);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Set<String> queries) {
+		ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+		List<InvertedIndex> current = version();
+		for (InvertedIndex segment : current) {
+			found.add(segment.partialSearch(queries));
+		}
+		return combineResults(current, found);
+	}
+
+	/**
+	 * Searches the only segment directly, otherwise keeps the k best of the
+	 * combined results.
+	 */
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		List<InvertedIndex> current = version();
+		if (current.size() == 1) {
+			return current.get(0).exactSearch(queries, k);
+		}
+		return TopResults.of(exactSearch(queries), k);
+	}
+
+	/**
+	 * Searches the only segment directly, otherwise keeps the k best of the
+	 * combined results.
+	 */
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		List<InvertedIndex> current = version();
+		if (current.size() == 1) {
+			return current.get(0).partialSearch(queries, k);
+		}
+		return TopResults.of(partialSearch(queries), k);
+	}
+
+	/**
+	 * Searches the only segment directly, otherwise keeps the k best of the
+	 * combined results since a bound from one segment says nothing about the
+	 * others.
+	 */
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		List<InvertedIndex> current = version();
+		if (current.size() == 1) {
+			return current.get(0).prunedSearch(queries, exact, k);
+		}
+		return search(queries, exact, k);
+	}
+
+	/**
+	 * Searches the only segment directly, otherwise searches every segment for
+	 * each word on its own and keeps the paths found for every word. A path is
+	 * scored by the matches of every word across the segments, the same as if the
+	 * segments had been combined first, so a path whose words were added in
+	 * different segments is still found.
+	 */
+	@Override
+	public ArrayList<Result> andSearch(Set<String> queries, boolean exact) {
+		List<InvertedIndex> current = version();
+		if (current.size() == 1) {
+			return current.get(0).andSearch(queries, exact);
+		}
+
+		HashMap<String, Result> matching = null;
+
+		for (String query : queries) {
+			ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+			for (InvertedIndex segment : current) {
+				found.add(exact ? segment.exactSearch(Set.of(query)) : segment.partialSearch(Set.of(query)));
+			}
+
+			HashMap<String, Result> next = new HashMap<String, Result>();
+			for (Result result : combineResults(current, found)) {
+				if (matching == null) {
+					next.put(result.getWhere(), result);
+				} else {
+					Result previous = matching.get(result.getWhere());
+					if (previous != null) {
+						previous.combine(result);
+						next.put(result.getWhere(), previous);
+					}
+				}
+			}
+
+			if (next.isEmpty()) {
+				return new ArrayList<Result>();
+			}
+			matching = next;
+		}
+
+		if (matching == null) {
+			return new ArrayList<Result>();
+		}
+
+		ArrayList<Result> results = new ArrayList<Result>(matching.values());
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Searches every segment on its own and combines the results. A phrase can
+	 * only be found within one segment, so if the words of the phrase for some
+	 * path were added in different segments the segments are combined first.
+	 */
+	@Override
+	public ArrayList<Result> phraseSearch(List<String> phrase) {
+		List<InvertedIndex> current = version();
+		if (current.size() == 1) {
+			return current.get(0).phraseSearch(phrase);
+		}
+
+		HashMap<String, InvertedIndex> owners = new HashMap<String, InvertedIndex>();
+		for (InvertedIndex segment : current) {
+			for (String word : phrase) {
+				for (String location : segment.get(word)) {
+					InvertedIndex owner = owners.putIfAbsent(location, segment);
+					if (owner != null && owner != segment) {
+						return current().phraseSearch(phrase);
+					}
+				}
+			}
+		}
+
+		ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+		for (InvertedIndex segment : current) {
+			found.add(segment.phraseSearch(phrase));
+		}
+		return combineResults(current, found);
+	}
+
+	/**
+	 * Combines the results of searching several segments, combining the results
+	 * for the same path as if the segments had been combined first. A path is
+	 * scored by its total words in every segment that holds it, including the
+	 * segments where nothing matched.
+	 *
+	 * @param current the segments that were searched
+	 * @param found   the sorted results from each segment
+	 * @return the combined sorted results
+	 */
+	private static ArrayList<Result> combineResults(List<InvertedIndex> current,
+			List<ArrayList<Result>> found) {
+		if (found.isEmpty()) {
+			return new ArrayList<Result>();
+		}
+
+		if (found.size() == 1) {
+			return found.get(0);
+		}
+
+		ArrayList<Result> results = new ArrayList<Result>();
+		HashMap<String, Result> seen = new HashMap<String, Result>();
+
+		for (ArrayList<Result> other : found) {
+			for (Result result : other) {
+				Result previous = seen.get(result.getWhere());
+				if (previous == null) {
+					seen.put(result.getWhere(), result);
+					results.add(result);
+				} else {
+					previous.combine(result);
+				}
+			}
+		}
+
+		for (Result result : results) {
+			int total = result.getTotal();
+			for (InvertedIndex segment : current) {
+				total = Math.max(total, segment.getCount(result.getWhere()));
+			}
+			if (total > result.getTotal()) {
+				result.update(0, total);
+			}
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	@Override
+	public int size(String word) {
+		return current().size(word);
+	}
+
+	@Override
+	public int size(String word, String path) {
+		return current().size(word, path);
+	}
+
+	@Override
+	public int size() {
+		return current().size();
+	}
+
+	@Override
+	public Set<String> get(String word) {
+		return current().get(word);
+	}
+
+	@Override
+	public Set<Integer> get(String location, String path) {
+		return current().get(location, path);
+	}
+
+	@Override
+	public Set<String> get() {
+		return current().get();
+	}
+
+	@Override
+	public boolean contains(String word) {
+		for (InvertedIndex segment : version()) {
+			if (segment.contains(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String word, String path) {
+		for (InvertedIndex segment : version()) {
+			if (segment.contains(word, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String word, String path, int position) {
+		for (InvertedIndex segment : version()) {
+			if (segment.contains(word, path, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void writeJsonObject(Path path, JsonIndexWriter writer) throws IOException {
+		current().writeJsonObject(path, writer);
+	}
+
+	@Override
+	public void writeCountsJsonObject(Path path) throws IOException {
+		current().writeCountsJsonObject(path);
+	}
+
+	@Override
+	public void writeSnapshot(Path path) throws IOException {
+		current().writeSnapshot(path);
+	}
+
+	@Override
+	public void writeSegment(Path path) throws IOException {
+		current().writeSegment(path);
+	}
+
+	/**
+	 * Publishes a new version without the location. Segments are never modified,
+	 * so each segment with the location is replaced by a copy with a tombstone for
+	 * it. The copy shares the words and postings of the segment, and the merger
+	 * purges the tombstones once enough of the documents of a segment are
+	 * removed.
+	 *
+	 * @param location the path or url to remove
+	 * @return true if the location had any words to remove
+	 */
+	@Override
+	public boolean remove(String location) {
+		return update(location, null);
+	}
+
+	/**
+	 * Publishes a new version with the words of the location replaced by the other
+	 * index in one step, so no search finds the location missing in between. The
+	 * other index must not be modified afterwards.
+	 *
+	 * @param location the path or url to replace
+	 * @param other    the index with the new words of the location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex other) {
+		update(location, other);
+	}
+
+	/**
+	 * Publishes a new version without the location, and with the other index as a
+	 * new segment if there is one.
+	 *
+	 * @param location the path or url to remove
+	 * @param other    the index to add as a new segment, or null
+	 * @return true if the location had any words to remove
+	 */
+	private boolean update(String location, InvertedIndex other) {
+		List<InvertedIndex> current;
+		ArrayList<InvertedIndex> updated;
+		boolean removed;
+
+		flush();
+		do {
+			current = segments.get();
+			updated = new ArrayList<InvertedIndex>(current.size() + 1);
+			removed = false;
+
+			for (InvertedIndex segment : current) {
+				InvertedIndex copy = segment.without(location);
+				if (copy != null) {
+					removed = true;
+					updated.add(copy);
+				} else {
+					updated.add(segment);
+				}
+			}
+
+			if (other != null) {
+				updated.add(other);
+			} else if (!removed) {
+				return false;
+			}
+		} while (!segments.compareAndSet(current, Collections.unmodifiableList(updated)));
+		changed();
+
+		synchronized (mergerLock) {
+			mergerLock.notifyAll();
+		}
+		return removed;
+	}
+
+	@Override
+	public int tombstones() {
+		int tombstones = 0;
+		for (InvertedIndex segment : segments.get()) {
+			tombstones += segment.tombstones();
+		}
+		return tombstones;
+	}
+
+	/**
+	 * Returns true if any segment has enough tombstones to be worth merging on
+	 * its own.
+	 *
+	 * @return boolean
+	 */
+	@Override
+	boolean needsCompaction() {
+		return needsCompaction(segments.get());
+	}
+
+	/**
+	 * Returns true if any of the segments has enough tombstones to be worth
+	 * merging on its own.
+	 *
+	 * @param current the segments to check
+	 * @return boolean
+	 */
+	private static boolean needsCompaction(List<InvertedIndex> current) {
+		for (InvertedIndex segment : current) {
+			if (segment.needsCompaction()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Combines the segments into one segment without the removed documents and
+	 * publishes it as the new version.
+	 */
+	@Override
+	public void compact() {
+		List<InvertedIndex> current;
+		InvertedIndex merged;
+
+		flush();
+		if (tombstones() == 0) {
+			return;
+		}
+
+		do {
+			current = segments.get();
+			merged = merge(current);
+		} while (!segments.compareAndSet(current, List.of(merged)));
+	}
+
+	/**
+	 * Combines the segments into one compressed segment and publishes it as the
+	 * new version.
+	 */
+	@Override
+	public void compress() {
+		List<InvertedIndex> current;
+		InvertedIndex merged;
+
+		flush();
+		do {
+			current = segments.get();
+			merged = merge(current);
+			merged.compress();
+		} while (!segments.compareAndSet(current, List.of(merged)));
+	}
+
+	@Override
+	public InvertedIndex[] split(int parts) {
+		return current().split(parts);
+	}
+
+	@Override
+	public InvertedIndex[] splitByLocation(int parts) {
+		return current().splitByLocation(parts);
+	}
+
+	@Override
+	public Map<String, Integer> getCounts() {
+		return current().getCounts();
+	}
+
+	@Override
+	public String toString() {
+		return current().toString();
+	}
+
+	/**
+	 * Background thread that waits until there are too many segments or a segment
+	 * has too many tombstones, combines the segments with too many tombstones and
+	 * then the smallest ones into a new segment, and publishes it in their place.
+	 * The tombstones of the merged segments are purged.
+	 */
+	private class Merger extends Thread {
+		/**
+		 * Initializes the merger thread with a custom name.
+		 */
+		public Merger() {
+			setName("Merger" + getName());
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					synchronized (mergerLock) {
+						while (segments.get().size() < MAX_SEGMENTS && !needsCompaction(segments.get())) {
+							mergerLock.wait();
+						}
+					}
+
+					List<InvertedIndex> current = segments.get();
+					// sizes are counted once, since segments with tombstones count their live words
+					IdentityHashMap<InvertedIndex, Integer> sizes = new IdentityHashMap<InvertedIndex, Integer>();
+					for (InvertedIndex segment : current) {
+						sizes.put(segment, segment.size());
+					}
+
+					ArrayList<InvertedIndex> sorted = new ArrayList<InvertedIndex>(current);
+					sorted.sort(Comparator.comparing((InvertedIndex segment) -> !segment.needsCompaction())
+							.thenComparingInt(sizes::get));
+
+					int count = 0;
+					while (count < sorted.size() && sorted.get(count).needsCompaction()) {
+						count++;
+					}
+					if (current.size() >= MAX_SEGMENTS) {
+						count = Math.max(count, MERGE_FACTOR);
+					}
+
+					if (count == 0) {
+						continue;
+					}
+
+					List<InvertedIndex> inputs = sorted.subList(0, Math.min(count, sorted.size()));
+					InvertedIndex merged = merge(inputs);
+
+					// writers may have published a new version while merging
+					List<InvertedIndex> updated;
+					do {
+						current = segments.get();
+						updated = replace(current, inputs, merged);
+					} while (updated != null && !segments.compareAndSet(current, updated));
+				}
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Returns a new version with the inputs replaced by the merged segment, or
+		 * without them if the merged segment is empty.
+		 *
+		 * @param current the current version
+		 * @param inputs  the segments that were merged
+		 * @param merged  the merged segment
+		 * @return the new version, or null if an input is no longer in the current
+		 *         version
+		 */
+		private List<InvertedIndex> replace(List<InvertedIndex> current, List<InvertedIndex> inputs,
+				InvertedIndex merged) {
+			ArrayList<InvertedIndex> updated = new ArrayList<InvertedIndex>(current);
+
+			for (InvertedIndex input : inputs) {
+				boolean found = false;
+				for (int i = 0; i < updated.size() && !found; i++) {
+					if (updated.get(i) == input) {
+						updated.remove(i);
+						found = true;
+					}
+				}
+				if (!found) {
+					return null;
+				}
+			}
+
+			// every document of the inputs may have been removed
+			if (merged.size() > 0) {
+				updated.add(merged);
+			}
+			return Collections.unmodifiableList(updated);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet to GET handle requests to /shard. Searches the part of the index held
+ * by this process for already stemmed words and returns the results as JSON, so
+ * an aggregator can merge the results of every part. Requests look like:
+ *
+ * <pre>
+ * /shard?type=exact&amp;q=stem1+stem2&amp;k=50
+ * </pre>
+ *
+ * where type is the name of a {@link SearchType} and k is the number of results
+ * to keep, or {@link SearchType#ALL} (the default) to keep every result.
+ * Searches the part can not run, such as phrases on an index without
+ * positions, are answered with 501 Not Implemented.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class ShardServlet extends HttpServlet {
+	/**
+	 * ID used for serialization, which we are not using.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * index to search
+	 */
+	private final SearchableIndex index;
+
+	/**
+	 * Constructor
+	 *
+	 * @param index the index to search, must be safe to search from multiple
+	 *              threads
+	 */
+	public ShardServlet(SearchableIndex index) {
+		this.index = index;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String output;
+
+		try {
+			SearchType type = SearchType.valueOf(request.getParameter("type").toUpperCase(Locale.ROOT));
+			String k = request.getParameter("k");
+			output = search(index, type, request.getParameter("q"), k == null ? SearchType.ALL : Integer.parseInt(k));
+		} catch (IllegalArgumentException | NullPointerException e) {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		} catch (UnsupportedOperationException e) {
+			response.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		PrintWriter out = response.getWriter();
+		out.write(output);
+		out.flush();
+	}
+
+	/**
+	 * Searches the index and formats the results as JSON.
+	 *
+	 * @param index the index to search
+	 * @param type  the kind of search
+	 * @param q     the stemmed words to search for separated by spaces, in order
+	 *              for phrases
+	 * @param k     the number of results to keep, or {@link SearchType#ALL}
+	 * @return the results as JSON
+	 */
+	public static String search(SearchableIndex index, SearchType type, String q, int k) {
+		List<String> words = q == null || q.isBlank() ? List.of() : Arrays.asList(q.strip().split("\\s+"));
+
+		if (words.isEmpty()) {
+			return toJson(new TopResults(new ArrayList<InvertedIndex.Result>(), 0));
+		}
+
+		return toJson(type.search(index, words, k));
+	}
+
+	/**
+	 * Formats the results as a compact JSON object with the total, whether the
+	 * total is exact, and each result with the count and number of words needed to
+	 * score it again.
+	 *
+	 * @param found the results to format
+	 * @return the results as JSON
+	 */
+	public static String toJson(TopResults found) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"total\":").append(found.getTotal());
+		json.append(",\"exact\":").append(found.isTotalExact());
+		json.append(",\"results\":[");
+
+		boolean first = true;
+		for (InvertedIndex.Result result : found.getResults()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+
+			json.append("{\"where\":");
+			quote(json, result.getWhere());
+			json.append(",\"count\":").append(result.getCount());
+			json.append(",\"words\":").append(result.getTotal());
+			json.append(",\"snippet\":");
+			quote(json, result.getSnippet());
+			json.append(",\"timestamp\":");
+			quote(json, result.getTimestamp());
+			json.append('}');
+		}
+
+		json.append("]}");
+		return json.toString();
+	}
+
+	/**
+	 * Appends the text in quotes, or null if there is no text.
+	 *
+	 * @param json the JSON to append to
+	 * @param text the text to append
+	 */
+	private static void quote(StringBuilder json, String text) {
+		if (text == null) {
+			json.append("null");
+		} else {
+			json.append('"').append(SimpleJsonWriter.escape(text)).append('"');
+		}
+	}
+}
@@ -0,0 +1,615 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Thread safe inverted index that splits the documents into shards by location,
+ * where each shard is a separate index with its own lock. Every word of a
+ * document is stored in the same shard, so each shard scores its results
+ * exactly as the whole index would, and the results of the shards only need to
+ * be merged.
+ *
+ * Searches run on every shard in parallel on a fork/join pool, which splits the
+ * shards in half until each task searches one shard and merges the sorted
+ * results on the way back up. A single expensive search uses every core instead
+ * of only the thread that asked for it.
+ *
+ * The lock of the parent class is never used, it is only extended so this index
+ * can be used anywhere a {@link ThreadSafeInvertedIndex} is expected.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class ShardedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The default number of shards. */
+	public static final int DEFAULT = Runtime.getRuntime().availableProcessors();
+
+	/** The shards of the index, each document is stored in exactly one shard. */
+	private final InvertedIndex[] shards;
+
+	/** The lock of each shard. */
+	private final SimpleReadWriteLock[] locks;
+
+	/** The pool used to search the shards in parallel. */
+	private final ForkJoinPool pool;
+
+	/**
+	 * initializes a sharded inverted index with the default number of shards that
+	 * searches on the common fork/join pool
+	 */
+	public ShardedInvertedIndex() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * initializes a sharded inverted index that searches on the common fork/join
+	 * pool
+	 *
+	 * @param shards the number of shards to use
+	 */
+	public ShardedInvertedIndex(int shards) {
+		this(shards, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * initializes a sharded inverted index
+	 *
+	 * @param shards the number of shards to use
+	 * @param pool   the pool used to search the shards in parallel
+	 */
+	public ShardedInvertedIndex(int shards, ForkJoinPool pool) {
+		this(shards, pool, SimpleReadWriteLock.Fairness.WRITER_PREFERRING);
+	}
+
+	/**
+	 * initializes a sharded inverted index
+	 *
+	 * @param shards   the number of shards to use
+	 * @param pool     the pool used to search the shards in parallel
+	 * @param fairness the order waiting readers and writers acquire each lock in
+	 */
+	public ShardedInvertedIndex(int shards, ForkJoinPool pool, SimpleReadWriteLock.Fairness fairness) {
+		super(fairness);
+		this.shards = new InvertedIndex[shards];
+		this.locks = new SimpleReadWriteLock[shards];
+		this.pool = pool;
+
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new InvertedIndex();
+			this.locks[i] = new SimpleReadWriteLock(fairness);
+		}
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return number of shards
+	 */
+	public int shards() {
+		return shards.length;
+	}
+
+	/**
+	 * Returns the shard a location is stored in.
+	 *
+	 * @param path the location to look for
+	 * @return the number of the shard
+	 */
+	private int shard(String path) {
+		return InvertedIndex.part(path, shards.length);
+	}
+
+	/**
+	 * Combines each document of the other index into the shard that owns it,
+	 * locking one shard at a time. Builders usually combine one document at a
+	 * time, in which case the other index is combined as is.
+	 *
+	 * @param other the index to add to current index
+	 */
+	@Override
+	public void combineIndex(InvertedIndex other) {
+		Map<String, Integer> counts = other.getCounts();
+		int owner = -1;
+
+		for (String location : counts.keySet()) {
+			int i = shard(location);
+			owner = owner == -1 || owner == i ? i : -2;
+		}
+
+		if (owner >= 0) {
+			combineShard(owner, other);
+		} else if (owner == -2) {
+			InvertedIndex[] parts = other.splitByLocation(shards.length);
+			for (int i = 0; i < shards.length; i++) {
+				if (parts[i].size() > 0) {
+					combineShard(i, parts[i]);
+				}
+			}
+		}
+
+		changed();
+	}
+
+	/**
+	 * Combines the other index into one shard.
+	 *
+	 * @param i     the number of the shard
+	 * @param other the index to add to the shard
+	 */
+	private void combineShard(int i, InvertedIndex other) {
+		locks[i].writeLock().lock();
+		try {
+			shards[i].combineIndex(other);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void add(String word, String path, int position) {
+		int i = shard(path);
+		locks[i].writeLock().lock();
+		try {
+			shards[i].add(word, path, position);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+		changed();
+	}
+
+	@Override
+	public void add(String word, String path, int position, String htmlSnippet, Timestamp timestamp) {
+		int i = shard(path);
+		locks[i].writeLock().lock();
+		try {
+			shards[i].add(word, path, position, htmlSnippet, timestamp);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+		changed();
+	}
+
+	@Override
+	public boolean remove(String location) {
+		int i = shard(location);
+		boolean removed;
+
+		locks[i].writeLock().lock();
+		try {
+			removed = shards[i].remove(location);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+
+		if (removed) {
+			changed();
+		}
+		compactLater();
+		return removed;
+	}
+
+	/**
+	 * Replaces the words of the location while holding the lock of its shard, so
+	 * no search finds the location missing in between. If the other index also
+	 * has documents owned by other shards, those are combined afterwards.
+	 *
+	 * @param location the path or url to replace
+	 * @param other    the index with the new words of the location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex other) {
+		int i = shard(location);
+		boolean owned = true;
+
+		for (String path : other.getCounts().keySet()) {
+			owned &= shard(path) == i;
+		}
+
+		if (!owned) {
+			remove(location);
+			combineIndex(other);
+			return;
+		}
+
+		locks[i].writeLock().lock();
+		try {
+			shards[i].remove(location);
+			shards[i].combineIndex(other);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+
+		changed();
+		compactLater();
+	}
+
+	@Override
+	public int tombstones() {
+		int tombstones = 0;
+		for (int i = 0; i < shards.length; i++) {
+			tombstones += locks[i].optimisticRead(shards[i]::tombstones);
+		}
+		return tombstones;
+	}
+
+	@Override
+	boolean needsCompaction() {
+		for (int i = 0; i < shards.length; i++) {
+			if (locks[i].optimisticRead(shards[i]::needsCompaction)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compacts each shard, locking one shard at a time.
+	 */
+	@Override
+	public void compact() {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].compact();
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Set<String> queries) {
+		return pool.invoke(new ShardTask<ArrayList<Result>>(0, shards.length, shard -> shard.exactSearch(queries),
+				ShardedInvertedIndex::merge));
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Set<String> queries) {
+		return pool.invoke(new ShardTask<ArrayList<Result>>(0, shards.length, shard -> shard.partialSearch(queries),
+				ShardedInvertedIndex::merge));
+	}
+
+	@Override
+	public ArrayList<Result> andSearch(Set<String> queries, boolean exact) {
+		return pool.invoke(new ShardTask<ArrayList<Result>>(0, shards.length,
+				shard -> shard.andSearch(queries, exact), ShardedInvertedIndex::merge));
+	}
+
+	@Override
+	public ArrayList<Result> phraseSearch(List<String> phrase) {
+		return pool.invoke(new ShardTask<ArrayList<Result>>(0, shards.length, shard -> shard.phraseSearch(phrase),
+				ShardedInvertedIndex::merge));
+	}
+
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		return pool.invoke(new ShardTask<TopResults>(0, shards.length, shard -> shard.exactSearch(queries, k),
+				(a, b) -> merge(a, b, k)));
+	}
+
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		return pool.invoke(new ShardTask<TopResults>(0, shards.length, shard -> shard.partialSearch(queries, k),
+				(a, b) -> merge(a, b, k)));
+	}
+
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		return pool.invoke(new ShardTask<TopResults>(0, shards.length,
+				shard -> shard.prunedSearch(queries, exact, k), (a, b) -> merge(a, b, k)));
+	}
+
+	/**
+	 * Merges the sorted results of two shards. No document is in both shards, so
+	 * the results never need to be combined.
+	 *
+	 * @param a the sorted results of one shard
+	 * @param b the sorted results of another shard
+	 * @return the merged sorted results
+	 */
+	private static ArrayList<Result> merge(ArrayList<Result> a, ArrayList<Result> b) {
+		return merge(a, b, a.size() + b.size());
+	}
+
+	/**
+	 * Merges the sorted results of two shards, keeping the k best.
+	 *
+	 * @param a the sorted results of one shard
+	 * @param b the sorted results of another shard
+	 * @param k the number of results to keep
+	 * @return the merged sorted results
+	 */
+	private static ArrayList<Result> merge(List<Result> a, List<Result> b, int k) {
+		ArrayList<Result> merged = new ArrayList<Result>(Math.max(0, Math.min(k, a.size() + b.size())));
+		int i = 0;
+		int j = 0;
+
+		while (merged.size() < k && (i < a.size() || j < b.size())) {
+			if (j >= b.size() || (i < a.size() && a.get(i).compareTo(b.get(j)) <= 0)) {
+				merged.add(a.get(i++));
+			} else {
+				merged.add(b.get(j++));
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Merges the best results of two shards, keeping the k best and adding up the
+	 * number of documents that matched.
+	 *
+	 * @param a the best results of one shard
+	 * @param b the best results of another shard
+	 * @param k the number of results to keep
+	 * @return the merged best results
+	 */
+	private static TopResults merge(TopResults a, TopResults b, int k) {
+		return new TopResults(merge(a.getResults(), b.getResults(), k), a.getTotal() + b.getTotal(),
+				a.isTotalExact() && b.isTotalExact());
+	}
+
+	/**
+	 * Combines every shard into a single index, holding the lock of every shard
+	 * so no writer is halfway done.
+	 *
+	 * @return the whole index
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex();
+
+		// always lock the shards in the same order
+		for (SimpleReadWriteLock lock : locks) {
+			lock.readLock().lock();
+		}
+		try {
+			for (InvertedIndex shard : shards) {
+				merged.combineIndex(shard);
+			}
+		} finally {
+			for (SimpleReadWriteLock lock : locks) {
+				lock.readLock().unlock();
+			}
+		}
+
+		return merged;
+	}
+
+	@Override
+	public InvertedIndex[] split(int parts) {
+		return merged().split(parts);
+	}
+
+	@Override
+	public InvertedIndex[] splitByLocation(int parts) {
+		return merged().splitByLocation(parts);
+	}
+
+	@Override
+	public int size(String word) {
+		int size = 0;
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				size += shards[i].size(word);
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int size(String word, String path) {
+		int i = shard(path);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].size(word, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return get().size();
+	}
+
+	@Override
+	public Set<String> get(String word) {
+		TreeSet<String> paths = new TreeSet<String>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				paths.addAll(shards[i].get(word));
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(paths);
+	}
+
+	@Override
+	public Set<Integer> get(String location, String path) {
+		int i = shard(path);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].get(location, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<String> get() {
+		TreeSet<String> words = new TreeSet<String>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words.addAll(shards[i].get());
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				if (shards[i].contains(word)) {
+					return true;
+				}
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String word, String path) {
+		int i = shard(path);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].contains(word, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String path, int position) {
+		int i = shard(path);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].contains(word, path, position);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getCounts() {
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				counts.putAll(shards[i].getCounts());
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public void writeJsonObject(Path path, JsonIndexWriter writer) throws IOException {
+		merged().writeJsonObject(path, writer);
+	}
+
+	@Override
+	public void writeCountsJsonObject(Path path) throws IOException {
+		SimpleJsonWriter.asObject(getCounts(), path);
+	}
+
+	@Override
+	public void writeSnapshot(Path path) throws IOException {
+		merged().writeSnapshot(path);
+	}
+
+	@Override
+	public void writeSegment(Path path) throws IOException {
+		merged().writeSegment(path);
+	}
+
+	@Override
+	public void compress() {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].compress();
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+
+	/**
+	 * Searches a range of shards by splitting it in half until one shard is left,
+	 * then merges the results of both halves.
+	 *
+	 * @param <T> the type of results
+	 */
+	private class ShardTask<T> extends RecursiveTask<T> {
+		/** ID used for serialization, which we are not using. */
+		private static final long serialVersionUID = 1L;
+
+		/** The first shard to search. */
+		private final int start;
+
+		/** The shard after the last one to search. */
+		private final int end;
+
+		/** The search to run on each shard. */
+		private final Function<InvertedIndex, T> search;
+
+		/** Merges the results of two halves. */
+		private final BinaryOperator<T> merge;
+
+		/**
+		 * constructor
+		 *
+		 * @param start  the first shard to search
+		 * @param end    the shard after the last one to search
+		 * @param search the search to run on each shard
+		 * @param merge  merges the results of two halves
+		 */
+		public ShardTask(int start, int end, Function<InvertedIndex, T> search, BinaryOperator<T> merge) {
+			this.start = start;
+			this.end = end;
+			this.search = search;
+			this.merge = merge;
+		}
+
+		@Override
+		protected T compute() {
+			if (end - start == 1) {
+				locks[start].readLock().lock();
+				try {
+					return search.apply(shards[start]);
+				} finally {
+					locks[start].readLock().unlock();
+				}
+			}
+
+			int middle = (start + end) >>> 1;
+			ShardTask<T> left = new ShardTask<T>(start, middle, search, merge);
+			ShardTask<T> right = new ShardTask<T>(middle, end, search, merge);
+
+			left.fork();
+			T found = right.compute();
+			return merge.apply(left.join(), found);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the JSON written by {@link SimpleJsonWriter} and {@link ShardServlet}
+ * back into Java objects. Objects become maps, arrays become lists, whole
+ * numbers become longs, other numbers become doubles, and true, false, and null
+ * become booleans and null.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class SimpleJsonReader {
+
+	/** The text being read. */
+	private final String text;
+
+	/** The position of the next character to read. */
+	private int position;
+
+	/**
+	 * constructor
+	 *
+	 * @param text the text to read
+	 */
+	private SimpleJsonReader(String text) {
+		this.text = text;
+		this.position = 0;
+	}
+
+	/**
+	 * Reads a JSON value.
+	 *
+	 * @param text the JSON to read
+	 * @return the value
+	 * @throws IllegalArgumentException if the text is not valid JSON
+	 */
+	public static Object read(String text) {
+		SimpleJsonReader reader = new SimpleJsonReader(text);
+		Object value = reader.value();
+		reader.skipWhitespace();
+
+		if (reader.position != text.length()) {
+			throw reader.error("Unexpected text after value");
+		}
+
+		return value;
+	}
+
+	/**
+	 * Reads a JSON object.
+	 *
+	 * @param text the JSON to read
+	 * @return the object
+	 * @throws IllegalArgumentException if the text is not a valid JSON object
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> readObject(String text) {
+		Object value = read(text);
+
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException("Expected a JSON object");
+		}
+
+		return (Map<String, Object>) value;
+	}
+
+	/**
+	 * Reads the value starting at the current position.
+	 *
+	 * @return the value
+	 */
+	private Object value() {
+		skipWhitespace();
+
+		if (position >= text.length()) {
+			throw error("Unexpected end of text");
+		}
+
+		char c = text.charAt(position);
+		return switch (c) {
+			case '{' -> object();
+			case '[' -> array();
+			case '"' -> string();
+			case 't' -> literal("true", Boolean.TRUE);
+			case 'f' -> literal("false", Boolean.FALSE);
+			case 'n' -> literal("null", null);
+			default -> number();
+		};
+	}
+
+	/**
+	 * Reads the object starting at the current position.
+	 *
+	 * @return the object
+	 */
+	private Map<String, Object> object() {
+		LinkedHashMap<String, Object> object = new LinkedHashMap<String, Object>();
+		expect('{');
+		skipWhitespace();
+
+		if (peek() == '}') {
+			position++;
+			return object;
+		}
+
+		do {
+			skipWhitespace();
+			String key = string();
+			skipWhitespace();
+			expect(':');
+			object.put(key, value());
+			skipWhitespace();
+		} while (next() == ',');
+
+		position--;
+		expect('}');
+		return object;
+	}
+
+	/**
+	 * Reads the array starting at the current position.
+	 *
+	 * @return the array
+	 */
+	private List<Object> array() {
+		ArrayList<Object> array = new ArrayList<Object>();
+		expect('[');
+		skipWhitespace();
+
+		if (peek() == ']') {
+			position++;
+			return array;
+		}
+
+		do {
+			array.add(value());
+			skipWhitespace();
+		} while (next() == ',');
+
+		position--;
+		expect(']');
+		return array;
+	}
+
+	/**
+	 * Reads the string starting at the current position.
+	 *
+	 * @return the string without quotes or escapes
+	 */
+	private String string() {
+		expect('"');
+		StringBuilder string = new StringBuilder();
+
+		while (true) {
+			char c = next();
+
+			if (c == '"') {
+				return string.toString();
+			}
+
+			if (c != '\\') {
+				string.append(c);
+				continue;
+			}
+
+			c = next();
+			switch (c) {
+				case '"', '\\', '/' -> string.append(c);
+				case 'b' -> string.append('\b');
+				case 'f' -> string.append('\f');
+				case 'n' -> string.append('\n');
+				case 'r' -> string.append('\r');
+				case 't' -> string.append('\t');
+				case 'u' -> {
+					if (position + 4 > text.length()) {
+						throw error("Unexpected end of text");
+					}
+					try {
+						string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("Invalid unicode escape");
+					}
+					position += 4;
+				}
+				default -> throw error("Invalid escape");
+			}
+		}
+	}
+
+	/**
+	 * Reads the number starting at the current position.
+	 *
+	 * @return a long for whole numbers, otherwise a double
+	 */
+	private Object number() {
+		int start = position;
+		boolean whole = true;
+
+		while (position < text.length()) {
+			char c = text.charAt(position);
+
+			if (c == '.' || c == 'e' || c == 'E') {
+				whole = false;
+			} else if (!(Character.isDigit(c) || c == '-' || c == '+')) {
+				break;
+			}
+
+			position++;
+		}
+
+		String number = text.substring(start, position);
+
+		try {
+			return whole ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			position = start;
+			throw error("Invalid value");
+		}
+	}
+
+	/**
+	 * Reads the literal starting at the current position.
+	 *
+	 * @param literal the literal expected
+	 * @param value   the value of the literal
+	 * @return the value
+	 */
+	private Object literal(String literal, Object value) {
+		if (!text.startsWith(literal, position)) {
+			throw error("Invalid value");
+		}
+
+		position += literal.length();
+		return value;
+	}
+
+	/**
+	 * Moves past any whitespace.
+	 */
+	private void skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * Returns the next character without moving past it.
+	 *
+	 * @return the next character
+	 */
+	private char peek() {
+		if (position >= text.length()) {
+			throw error("Unexpected end of text");
+		}
+
+		return text.charAt(position);
+	}
+
+	/**
+	 * Returns the next character and moves past it.
+	 *
+	 * @return the next character
+	 */
+	private char next() {
+		char c = peek();
+		position++;
+		return c;
+	}
+
+	/**
+	 * Moves past the next character if it is the one expected.
+	 *
+	 * @param expected the character expected
+	 */
+	private void expect(char expected) {
+		if (next() != expected) {
+			position--;
+			throw error("Expected '" + expected + "'");
+		}
+	}
+
+	/**
+	 * Creates an exception describing where the text is not valid JSON.
+	 *
+	 * @param message what went wrong
+	 * @return the exception to throw
+	 */
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + position);
+	}
+}
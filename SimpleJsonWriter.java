@@ -13,7 +13,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Outputs several simple data structures in "pretty" JSON format where newlines
@@ -31,15 +30,18 @@ public class SimpleJsonWriter {
 	private static final DecimalFormat FORMATTER = new DecimalFormat("0.00000000");
 
 	/**
-	 * Writes the elements as a pretty JSON object.
+	 * Writes the elements as a pretty JSON object. The document ids of each word
+	 * are turned back into locations using the document table, so the nested
+	 * objects are sorted by location.
 	 *
-	 * @param elements the elements to write
-	 * @param writer   the writer to use
-	 * @param level    the initial indent level
+	 * @param elements  the elements to write
+	 * @param documents the document table used to look up locations
+	 * @param writer    the writer to use
+	 * @param level     the initial indent level
 	 * @throws IOException if an IO error occurs
 	 */
-	public static void asObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Writer writer, int level)
-			throws IOException {
+	public static void asObject(TreeMap<String, TreeMap<Integer, PositionList>> elements, DocumentTable documents,
+			Writer writer, int level) throws IOException {
 
 		writer.write("{");
 
@@ -49,19 +51,36 @@ public class SimpleJsonWriter {
 			String k = keys.next();
 			quote(k, writer, level + 1);
 			writer.write(": ");
-			asNestedArray(elements.get(k), writer, level + 1);
+			asNestedArray(byLocation(elements.get(k), documents), writer, level + 1);
 			while (keys.hasNext()) {
 				writer.write(",\n");
 				k = keys.next();
 				quote(k, writer, level + 1);
 				writer.write(": ");
-				asNestedArray(elements.get(k), writer, level + 1);
+				asNestedArray(byLocation(elements.get(k), documents), writer, level + 1);
 			}
 		}
 		writer.write("\n}");
 
 	}
 
+	/**
+	 * Returns a view of the postings of a word keyed and sorted by location
+	 * instead of document id. The position sets are shared, not copied.
+	 *
+	 * @param postings  the document id to positions map of a word
+	 * @param documents the document table used to look up locations
+	 * @return map of location to positions
+	 */
+	private static TreeMap<String, PositionList> byLocation(TreeMap<Integer, PositionList> postings,
+			DocumentTable documents) {
+		TreeMap<String, PositionList> sorted = new TreeMap<String, PositionList>();
+		for (Map.Entry<Integer, PositionList> entry : postings.entrySet()) {
+			sorted.put(documents.getLocation(entry.getKey()), entry.getValue());
+		}
+		return sorted;
+	}
+
 	/**
 	 * Writes the elements as a pretty JSON object with nested arrays. The generic
 	 * notation used allows this method to be used for any type of map with any type
@@ -274,15 +293,16 @@ public class SimpleJsonWriter {
 	/**
 	 * Writes the elements as a pretty JSON object to file.
 	 *
-	 * @param elements the elements to write
-	 * @param path     the file path to use
+	 * @param elements  the elements to write
+	 * @param documents the document table used to look up locations
+	 * @param path      the file path to use
 	 * @throws IOException if an IO error occurs
 	 *
 	 */
-	public static void asObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Path path)
-			throws IOException {
+	public static void asObject(TreeMap<String, TreeMap<Integer, PositionList>> elements, DocumentTable documents,
+			Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			asObject(elements, writer, 0);
+			asObject(elements, documents, writer, 0);
 		}
 	}
 
@@ -362,7 +382,8 @@ public class SimpleJsonWriter {
 
 	/**
 	 * Indents and then writes the text element surrounded by {@code " "} quotation
-	 * marks.
+	 * marks, escaping any quotation marks, backslashes, and control characters
+	 * inside it.
 	 *
 	 * @param element the element to write
 	 * @param writer  the writer to use
@@ -372,10 +393,41 @@ public class SimpleJsonWriter {
 	public static void quote(String element, Writer writer, int level) throws IOException {
 		indent(writer, level);
 		writer.write('"');
-		writer.write(element);
+		writer.write(escape(element));
 		writer.write('"');
 	}
 
+	/**
+	 * Escapes the quotation marks, backslashes, and control characters in the
+	 * text so it can be written inside a JSON string.
+	 *
+	 * @param text the text to escape
+	 * @return the escaped text
+	 */
+	public static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"' -> escaped.append("\\\"");
+				case '\\' -> escaped.append("\\\\");
+				case '\n' -> escaped.append("\\n");
+				case '\r' -> escaped.append("\\r");
+				case '\t' -> escaped.append("\\t");
+				default -> {
+					if (c < 0x20) {
+						escaped.append(String.format("\\u%04x", (int) c));
+					} else {
+						escaped.append(c);
+					}
+				}
+			}
+		}
+
+		return escaped.toString();
+	}
+
 	/**
 	 * Returns the elements as a pretty JSON array.
 	 *
@@ -1,8 +1,15 @@
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
 /**
  * Maintains a pair of associated locks, one for read-only operations and one
@@ -10,6 +17,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * threads, so long as there are no writers. The write lock is exclusive. The
  * active writer is able to acquire read or write locks as long as it is active.
  *
+ * The {@link Fairness} decides who goes first when readers and writers are
+ * both waiting. A thread that already holds the read lock may always acquire
+ * it again, so nested reads never wait behind a writer that is waiting for
+ * them. Upgrading a read lock to a write lock is not supported.
+ *
+ * Readers that do not have to wait only update a counter, and waiting threads
+ * are woken one at a time when it is their turn instead of all at once. Short
+ * reads may also skip the lock entirely with {@link #tryOptimisticRead()} and
+ * {@link #validate(long)}.
+ *
  * <!-- simplified lock used for this class -->
  *
  * @see SimpleLock
@@ -19,25 +36,82 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @see ReentrantLock
  * @see ReadWriteLock
  * @see ReentrantReadWriteLock
+ * @see StampedLock
  *
  * @author CS 272 Software Development (University of San Francisco)
  * @version Fall 2021
  */
 public class SimpleReadWriteLock {
+
+	/**
+	 * The order waiting readers and writers acquire the lock in.
+	 */
+	public enum Fairness {
+		/**
+		 * New readers enter whenever no writer is active, even if writers are
+		 * waiting. Reads never wait behind writes, but a steady stream of readers
+		 * can keep a writer waiting forever.
+		 */
+		READER_PREFERRING,
+
+		/**
+		 * New readers wait while any writer is waiting, so writers go first once
+		 * the current readers finish.
+		 */
+		WRITER_PREFERRING,
+
+		/**
+		 * Threads acquire the lock in the order they asked for it, with waiting
+		 * readers next to each other in line entering together.
+		 */
+		FIFO
+	}
+
+	/** Set in the state while new readers must wait or ask the monitor. */
+	private static final int BLOCKED = 1 << 30;
+
+	/** Set in the state while any thread is waiting to be woken. */
+	private static final int QUEUED = 1 << 29;
+
+	/** The bits of the state that count the active readers. */
+	private static final int READERS = QUEUED - 1;
+
 	/** The conditional lock used for reading. */
 	private final SimpleLock readerLock;
 
 	/** The conditional lock used for writing. */
 	private final SimpleLock writerLock;
 
-	/** The number of active readers. */
-	private int readers;
+	/** The order waiting readers and writers acquire the lock in. */
+	private final Fairness fairness;
 
-	/** The number of active writers; */
+	/**
+	 * The number of active readers, with the blocked and queued flags. Readers
+	 * that do not have to wait only update this, while the flags are only changed
+	 * while holding the monitor.
+	 */
+	private final AtomicInteger state;
+
+	/** The number of active writers, protected by the monitor. */
 	private int writers;
 
 	/** The thread that holds the write lock. */
-	private Thread activeWriter;
+	private volatile Thread activeWriter;
+
+	/** The threads waiting for the lock in the order they arrived. */
+	private final ArrayDeque<Waiter> waiting;
+
+	/** The number of writers waiting for the lock. */
+	private int waitingWriters;
+
+	/** The number of read locks each thread holds, if readers may ever wait. */
+	private final ThreadLocal<int[]> holds;
+
+	/**
+	 * Counts the writes, odd while a writer is active. It starts at 2 so that 0
+	 * is never a valid stamp.
+	 */
+	private volatile long version;
 
 	/**
 	 * The lock object used for synchronized access of readers and writers. For
@@ -50,23 +124,58 @@ public class SimpleReadWriteLock {
 	private final Object lock;
 
 	/**
-	 * Initializes a new simple read/write lock.
+	 * A thread waiting for the lock.
+	 */
+	private static class Waiter {
+		/** The waiting thread. */
+		private final Thread thread;
+
+		/** Whether the thread wants the write lock. */
+		private final boolean write;
+
+		/** Set once the thread holds the lock. */
+		private volatile boolean granted;
+
+		/**
+		 * Initializes a waiter for the current thread.
+		 *
+		 * @param write whether the thread wants the write lock
+		 */
+		private Waiter(boolean write) {
+			this.thread = Thread.currentThread();
+			this.write = write;
+		}
+	}
+
+	/**
+	 * Initializes a new simple read/write lock that lets new readers in whenever
+	 * no writer is active.
 	 */
 	public SimpleReadWriteLock() {
+		this(Fairness.READER_PREFERRING);
+	}
 
+	/**
+	 * Initializes a new simple read/write lock.
+	 *
+	 * @param fairness the order waiting readers and writers acquire the lock in
+	 */
+	public SimpleReadWriteLock(Fairness fairness) {
 		readerLock = new SimpleReadLock();
 		writerLock = new SimpleWriteLock();
 
 		lock = new Object();
 
-		readers = 0;
-		writers = 0;
+		this.fairness = fairness;
+		this.state = new AtomicInteger();
+		this.writers = 0;
+		this.activeWriter = null;
+		this.waiting = new ArrayDeque<Waiter>();
+		this.waitingWriters = 0;
+		this.version = 2;
 
-		activeWriter = null;
-		// keeps track of which thread is writing at the moment
-		// evervtime writing set it to current thread
-		// when done writing, or decrease amount writers that I have, then reset it to
-		// null
+		// readers only wait behind waiting writers if the lock is fair to writers
+		this.holds = fairness == Fairness.READER_PREFERRING ? null : ThreadLocal.withInitial(() -> new int[1]);
 	}
 
 	/**
@@ -87,15 +196,22 @@ public class SimpleReadWriteLock {
 		return writerLock;
 	}
 
+	/**
+	 * Returns the order waiting readers and writers acquire the lock in.
+	 *
+	 * @return the fairness
+	 */
+	public Fairness fairness() {
+		return fairness;
+	}
+
 	/**
 	 * Returns the number of active readers.
 	 *
 	 * @return the number of active readers
 	 */
 	public int readers() {
-		synchronized (lock) {
-			return readers;
-		}
+		return state.get() & READERS;
 	}
 
 	/**
@@ -119,8 +235,249 @@ public class SimpleReadWriteLock {
 	 * @see Thread#currentThread()
 	 */
 	public boolean isActiveWriter() {
-		synchronized (lock) {
-			return Thread.currentThread().equals(activeWriter);
+		return Thread.currentThread().equals(activeWriter);
+	}
+
+	/**
+	 * Returns a stamp to check with {@link #validate(long)} after reading without
+	 * the lock, or 0 if a writer is active. Anything read before the stamp is
+	 * validated may be inconsistent, so it must not be acted on and the reading
+	 * must not loop forever or throw anything but a runtime exception.
+	 *
+	 * @return the stamp, or 0 if a writer is active
+	 */
+	public long tryOptimisticRead() {
+		long stamp = version;
+		return (stamp & 1) == 0 ? stamp : 0;
+	}
+
+	/**
+	 * Returns true if no writer has been active since the stamp was returned, so
+	 * everything read since then is consistent.
+	 *
+	 * @param stamp the stamp returned by {@link #tryOptimisticRead()}
+	 * @return true if the reads since the stamp are consistent
+	 */
+	public boolean validate(long stamp) {
+		// keeps the reads before this from moving after the version is read
+		VarHandle.acquireFence();
+		return stamp != 0 && version == stamp;
+	}
+
+	/**
+	 * Reads without the lock if no writer is active before or during the read,
+	 * and otherwise reads again while holding the read lock. The reader should
+	 * only read a few fields, since it may see them halfway through a write.
+	 *
+	 * @param <T>    the type of value read
+	 * @param reader reads the value
+	 * @return the value read
+	 */
+	public <T> T optimisticRead(Supplier<T> reader) {
+		long stamp = tryOptimisticRead();
+
+		if (stamp != 0) {
+			try {
+				T value = reader.get();
+				if (validate(stamp)) {
+					return value;
+				}
+			} catch (RuntimeException e) {
+				// saw a write halfway through, so read again with the lock
+			}
+		}
+
+		readerLock.lock();
+		try {
+			return reader.get();
+		} finally {
+			readerLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns true if new readers must wait, not counting readers that already
+	 * hold the read lock or the active writer. Must be called while holding the
+	 * monitor.
+	 *
+	 * @return boolean
+	 */
+	private boolean blocked() {
+		if (activeWriter != null) {
+			return true;
+		}
+
+		return switch (fairness) {
+			case READER_PREFERRING -> false;
+			case WRITER_PREFERRING -> waitingWriters > 0;
+			case FIFO -> !waiting.isEmpty();
+		};
+	}
+
+	/**
+	 * Updates the flags of the state to match the waiting threads and the active
+	 * writer. Must be called while holding the monitor.
+	 */
+	private void updateState() {
+		int flags = (blocked() ? BLOCKED : 0) | (waiting.isEmpty() ? 0 : QUEUED);
+		int current;
+
+		do {
+			current = state.get();
+		} while (!state.compareAndSet(current, (current & READERS) | flags));
+	}
+
+	/**
+	 * Makes the thread the active writer if there are no active readers or
+	 * writers. Must be called while holding the monitor.
+	 *
+	 * @param thread the thread to make the active writer
+	 * @return true if the thread is now the active writer
+	 */
+	private boolean tryWrite(Thread thread) {
+		if (activeWriter != null) {
+			return false;
+		}
+
+		int current;
+		do {
+			current = state.get();
+			if ((current & READERS) != 0) {
+				return false;
+			}
+			// blocks readers that do not ask the monitor before checking for readers
+		} while (!state.compareAndSet(current, current | BLOCKED));
+
+		writers = 1;
+		activeWriter = thread;
+		version++;
+
+		// keeps the writes of the new writer from being seen before the version
+		VarHandle.storeStoreFence();
+		return true;
+	}
+
+	/**
+	 * Adds the waiter to the line and lets it in if it is already its turn. Must
+	 * be called while holding the monitor.
+	 *
+	 * @param waiter the waiter for the current thread
+	 */
+	private void enqueue(Waiter waiter) {
+		waiting.add(waiter);
+
+		if (waiter.write) {
+			waitingWriters++;
+		}
+
+		// the flags must be set before the readers are counted, or the last reader
+		// could leave in between without seeing anyone to wake
+		updateState();
+		grant();
+	}
+
+	/**
+	 * Lets waiting threads in if it is their turn, and wakes them. Must be called
+	 * while holding the monitor.
+	 */
+	private void grant() {
+		if (activeWriter == null && !waiting.isEmpty()) {
+			switch (fairness) {
+				case READER_PREFERRING -> {
+					grantReaders(false);
+					grantWriter();
+				}
+				case WRITER_PREFERRING -> {
+					if (waitingWriters == 0) {
+						grantReaders(false);
+					} else {
+						grantWriter();
+					}
+				}
+				case FIFO -> {
+					grantReaders(true);
+					grantWriter();
+				}
+			}
+		}
+
+		updateState();
+	}
+
+	/**
+	 * Lets waiting readers in. Must be called while holding the monitor.
+	 *
+	 * @param head whether to only let in the readers at the head of the line
+	 */
+	private void grantReaders(boolean head) {
+		Iterator<Waiter> iterator = waiting.iterator();
+
+		while (iterator.hasNext()) {
+			Waiter waiter = iterator.next();
+
+			if (waiter.write) {
+				if (head) {
+					return;
+				}
+			} else {
+				iterator.remove();
+				state.incrementAndGet();
+				wake(waiter);
+			}
+		}
+	}
+
+	/**
+	 * Lets the first waiting writer in if there are no active readers or writers.
+	 * Must be called while holding the monitor.
+	 */
+	private void grantWriter() {
+		if (waitingWriters == 0) {
+			return;
+		}
+
+		Iterator<Waiter> iterator = waiting.iterator();
+
+		while (iterator.hasNext()) {
+			Waiter waiter = iterator.next();
+
+			if (waiter.write) {
+				if (tryWrite(waiter.thread)) {
+					iterator.remove();
+					waitingWriters--;
+					wake(waiter);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Tells the waiter it holds the lock and wakes its thread.
+	 *
+	 * @param waiter the waiter to wake
+	 */
+	private static void wake(Waiter waiter) {
+		waiter.granted = true;
+		LockSupport.unpark(waiter.thread);
+	}
+
+	/**
+	 * Waits until the waiter is told it holds the lock. An interrupt does not stop
+	 * the wait, but is kept for the thread to see once it holds the lock.
+	 *
+	 * @param waiter the waiter for the current thread
+	 */
+	private void await(Waiter waiter) {
+		boolean interrupted = false;
+
+		while (!waiter.granted) {
+			LockSupport.park(this);
+			interrupted |= Thread.interrupted();
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -129,46 +486,68 @@ public class SimpleReadWriteLock {
 	 */
 	private class SimpleReadLock implements SimpleLock {
 		/**
-		 * Controls access to the read lock. The active thread is forced to wait while
-		 * there are any active writers and it is not the active writer thread. Once
-		 * safe, the thread is allowed to acquire a read lock by safely incrementing the
-		 * number of active readers.
+		 * Controls access to the read lock. The active thread only waits if it is
+		 * not the active writer, does not already hold the read lock, and a writer
+		 * is active or, depending on the fairness, waiting. Once safe, the thread is
+		 * allowed to acquire a read lock by safely incrementing the number of active
+		 * readers.
 		 */
 		@Override
 		public void lock() {
-			try {
-				synchronized (lock) {
-					while (!isActiveWriter() && writers > 0) {
+			int current = state.get();
 
-						lock.wait();
+			if ((current & BLOCKED) != 0 || !state.compareAndSet(current, current + 1)) {
+				lockSlowly();
+			}
 
-					}
+			if (holds != null) {
+				holds.get()[0]++;
+			}
+		}
+
+		/**
+		 * Acquires the read lock while holding the monitor, waiting if necessary.
+		 */
+		private void lockSlowly() {
+			Waiter waiter;
 
-					readers++;
+			synchronized (lock) {
+				if (isActiveWriter() || (holds != null && holds.get()[0] > 0) || !blocked()) {
+					state.incrementAndGet();
+					return;
 				}
 
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+				waiter = new Waiter(false);
+				enqueue(waiter);
 			}
 
+			await(waiter);
 		}
 
 		/**
-		 * Will decrease the number of active readers and notify any waiting threads if
+		 * Will decrease the number of active readers and wake any waiting threads if
 		 * necessary.
 		 *
 		 * @throws IllegalStateException if no readers to unlock
 		 */
 		@Override
 		public void unlock() throws IllegalStateException {
-			synchronized (lock) {
-				if (readers == 0) {
+			int current;
+
+			do {
+				current = state.get();
+				if ((current & READERS) == 0) {
 					throw new IllegalStateException();
 				}
-				readers--;
+			} while (!state.compareAndSet(current, current - 1));
+
+			if (holds != null) {
+				holds.get()[0]--;
+			}
 
-				if (readers == 0) {
-					lock.notifyAll();
+			if ((current & READERS) == 1 && (current & QUEUED) != 0) {
+				synchronized (lock) {
+					grant();
 				}
 			}
 		}
@@ -180,32 +559,34 @@ public class SimpleReadWriteLock {
 	private class SimpleWriteLock implements SimpleLock {
 		/**
 		 * Controls access to the write lock. The active thread is forced to wait while
-		 * there are any active readers or writers, and it is not the active writer
-		 * thread. Once safe, the thread is allowed to acquire a write lock by safely
-		 * incrementing the number of active writers and setting the active writer
-		 * reference.
+		 * there are any active readers or writers, or other writers waiting, and it
+		 * is not the active writer thread. Once safe, the thread is allowed to acquire
+		 * a write lock by safely incrementing the number of active writers and
+		 * setting the active writer reference.
 		 */
 		@Override
 		public void lock() {
-			try {
-				synchronized (lock) {
-					while (!isActiveWriter() && (readers != 0 || writers != 0)) {
-
-						lock.wait();
-
-					}
+			Waiter waiter;
 
+			synchronized (lock) {
+				if (isActiveWriter()) {
 					writers++;
-					activeWriter = Thread.currentThread();
+					return;
 				}
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+
+				if (waiting.isEmpty() && tryWrite(Thread.currentThread())) {
+					return;
+				}
+
+				waiter = new Waiter(true);
+				enqueue(waiter);
 			}
 
+			await(waiter);
 		}
 
 		/**
-		 * Will decrease the number of active writers and notify any waiting threads if
+		 * Will decrease the number of active writers and wake any waiting threads if
 		 * necessary. Also unsets the active writer if appropriate.
 		 *
 		 * @throws IllegalStateException           if no writers to unlock
@@ -215,9 +596,7 @@ public class SimpleReadWriteLock {
 		 */
 		@Override
 		public void unlock() throws IllegalStateException, ConcurrentModificationException {
-
 			synchronized (lock) {
-
 				if (writers <= 0) {
 					throw new IllegalStateException();
 				}
@@ -229,10 +608,11 @@ public class SimpleReadWriteLock {
 				writers--;
 
 				if (writers == 0) {
+					version++;
 					activeWriter = null;
-					lock.notifyAll();
+					grant();
 				}
 			}
 		}
 	}
-}
\ No newline at end of file
+}
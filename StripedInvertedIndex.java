@@ -0,0 +1,641 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Thread safe inverted index that splits the words into stripes by hash, where
+ * each stripe is a separate index with its own lock. Workers combining or adding
+ * words only lock the stripes those words belong to, so they rarely wait on each
+ * other the way they do on the single lock of {@link ThreadSafeInvertedIndex}.
+ *
+ * The total words of each location are kept in one table with its own lock,
+ * since the words of a location are spread over every stripe. Searches look up
+ * each query in the stripes it can be found in, combine the matches for the same
+ * location, and score them using the total words from that table. Methods that
+ * need the whole index at once (such as writing it to file) lock every stripe and
+ * combine them into one index first.
+ *
+ * The lock of the parent class is never used, it is only extended so this index
+ * can be used anywhere a {@link ThreadSafeInvertedIndex} is expected.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class StripedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The default number of stripes. */
+	public static final int DEFAULT = 16;
+
+	/** The stripes of the index, each word is stored in exactly one stripe. */
+	private final InvertedIndex[] stripes;
+
+	/** The lock of each stripe. */
+	private final SimpleReadWriteLock[] locks;
+
+	/** The total words of each location across all stripes. */
+	private final HashMap<String, Integer> counts;
+
+	/** The lock used to protect the total words of each location. */
+	private final SimpleReadWriteLock countsLock;
+
+	/**
+	 * initializes a striped inverted index with the default number of stripes
+	 */
+	public StripedInvertedIndex() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * initializes a striped inverted index
+	 *
+	 * @param stripes the number of stripes to use
+	 */
+	public StripedInvertedIndex(int stripes) {
+		this(stripes, SimpleReadWriteLock.Fairness.WRITER_PREFERRING);
+	}
+
+	/**
+	 * initializes a striped inverted index
+	 *
+	 * @param stripes  the number of stripes to use
+	 * @param fairness the order waiting readers and writers acquire each lock in
+	 */
+	public StripedInvertedIndex(int stripes, SimpleReadWriteLock.Fairness fairness) {
+		super(fairness);
+		this.stripes = new InvertedIndex[stripes];
+		this.locks = new SimpleReadWriteLock[stripes];
+		this.counts = new HashMap<String, Integer>();
+		this.countsLock = new SimpleReadWriteLock(fairness);
+
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new InvertedIndex();
+			this.locks[i] = new SimpleReadWriteLock(fairness);
+		}
+	}
+
+	/**
+	 * Returns the number of stripes.
+	 *
+	 * @return number of stripes
+	 */
+	public int stripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Returns the stripe a word is stored in.
+	 *
+	 * @param word the word to look for
+	 * @return the number of the stripe
+	 */
+	private int stripe(String word) {
+		return InvertedIndex.part(word, stripes.length);
+	}
+
+	/**
+	 * Splits the other index by stripe and combines each part into its stripe,
+	 * locking one stripe at a time. The total words of each location are updated
+	 * first so a search never finds a location without them.
+	 *
+	 * @param other the index to add to current index
+	 */
+	@Override
+	public void combineIndex(InvertedIndex other) {
+		InvertedIndex[] parts = other.split(stripes.length);
+
+		countsLock.writeLock().lock();
+		try {
+			for (Map.Entry<String, Integer> entry : other.getCounts().entrySet()) {
+				counts.merge(entry.getKey(), entry.getValue(), Math::max);
+			}
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			if (parts[i].size() > 0) {
+				locks[i].writeLock().lock();
+				try {
+					stripes[i].combineIndex(parts[i]);
+				} finally {
+					locks[i].writeLock().unlock();
+				}
+			}
+		}
+
+		changed();
+	}
+
+	@Override
+	public void add(String word, String path, int position) {
+		int i = stripe(word);
+		boolean added;
+
+		locks[i].writeLock().lock();
+		try {
+			added = !stripes[i].contains(word, path, position);
+			stripes[i].add(word, path, position);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+
+		if (added) {
+			incrementCount(path);
+			changed();
+		}
+	}
+
+	@Override
+	public void add(String word, String path, int position, String htmlSnippet, Timestamp timestamp) {
+		int i = stripe(word);
+		boolean added;
+
+		locks[i].writeLock().lock();
+		try {
+			added = !stripes[i].contains(word, path, position);
+			stripes[i].add(word, path, position, htmlSnippet, timestamp);
+		} finally {
+			locks[i].writeLock().unlock();
+		}
+
+		if (added) {
+			incrementCount(path);
+			changed();
+		}
+	}
+
+	/**
+	 * Removes the location from every stripe, one stripe at a time, and then its
+	 * total words, so a search never finds a location without them.
+	 *
+	 * @param location the path or url to remove
+	 * @return true if the location had any words to remove
+	 */
+	@Override
+	public boolean remove(String location) {
+		boolean removed = false;
+
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				removed |= stripes[i].remove(location);
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+
+		countsLock.writeLock().lock();
+		try {
+			removed |= counts.remove(location) != null;
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+
+		if (removed) {
+			changed();
+		}
+		compactLater();
+		return removed;
+	}
+
+	/**
+	 * Replaces the words of the location. The words of a location are spread over
+	 * every stripe, so a search may find the location missing while it is being
+	 * replaced.
+	 *
+	 * @param location the path or url to replace
+	 * @param other    the index with the new words of the location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex other) {
+		remove(location);
+		combineIndex(other);
+	}
+
+	@Override
+	public int tombstones() {
+		int tombstones = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			tombstones += locks[i].optimisticRead(stripes[i]::tombstones);
+		}
+		return tombstones;
+	}
+
+	@Override
+	boolean needsCompaction() {
+		for (int i = 0; i < stripes.length; i++) {
+			if (locks[i].optimisticRead(stripes[i]::needsCompaction)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compacts each stripe, locking one stripe at a time.
+	 */
+	@Override
+	public void compact() {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				stripes[i].compact();
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Adds one to the total words of the location.
+	 *
+	 * @param path the location of the word that was added
+	 */
+	private void incrementCount(String path) {
+		countsLock.writeLock().lock();
+		try {
+			counts.merge(path, 1, Integer::sum);
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Set<String> queries) {
+		ArrayList<HashSet<String>> split = new ArrayList<HashSet<String>>();
+		for (int i = 0; i < stripes.length; i++) {
+			split.add(new HashSet<String>());
+		}
+		for (String query : queries) {
+			split.get(stripe(query)).add(query);
+		}
+
+		ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+		for (int i = 0; i < stripes.length; i++) {
+			if (!split.get(i).isEmpty()) {
+				locks[i].readLock().lock();
+				try {
+					found.add(stripes[i].exactSearch(split.get(i)));
+				} finally {
+					locks[i].readLock().unlock();
+				}
+			}
+		}
+		return combineResults(found);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Set<String> queries) {
+		ArrayList<ArrayList<Result>> found = new ArrayList<ArrayList<Result>>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				found.add(stripes[i].partialSearch(queries));
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return combineResults(found);
+	}
+
+	/**
+	 * Keeps the k best of the combined results, since the scores are not known
+	 * until the matches from every stripe are added up.
+	 */
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		return TopResults.of(exactSearch(queries), k);
+	}
+
+	/**
+	 * Keeps the k best of the combined results, since the scores are not known
+	 * until the matches from every stripe are added up.
+	 */
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		return TopResults.of(partialSearch(queries), k);
+	}
+
+	/**
+	 * Keeps the k best of the combined results without pruning, since the bounds
+	 * of each stripe do not use the total words of each location.
+	 */
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		return search(queries, exact, k);
+	}
+
+	/**
+	 * Searches for the documents that match every word of the query by removing
+	 * the results of the whole query that some word does not match.
+	 *
+	 * @param queries the query line being searched for in the index
+	 * @param exact   whether to perform exact search or partial
+	 * @return ArrayList list of results matching every word of the query
+	 */
+	@Override
+	public ArrayList<Result> andSearch(Set<String> queries, boolean exact) {
+		ArrayList<Result> results = exact ? exactSearch(queries) : partialSearch(queries);
+
+		for (String query : queries) {
+			Set<String> found;
+			if (exact) {
+				found = get(query);
+			} else {
+				found = new HashSet<String>();
+				for (Result result : partialSearch(Set.of(query))) {
+					found.add(result.getWhere());
+				}
+			}
+			results.removeIf(result -> !found.contains(result.getWhere()));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Searches for the documents that contain the words of the phrase next to
+	 * each other and in order, checking the positions of each word in the stripe
+	 * it is stored in.
+	 *
+	 * @param phrase the stemmed words of the phrase, in order
+	 * @return ArrayList list of results matching the phrase
+	 */
+	@Override
+	public ArrayList<Result> phraseSearch(List<String> phrase) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		ArrayList<Set<Integer>> positions = new ArrayList<Set<Integer>>();
+
+		for (Result result : andSearch(new TreeSet<String>(phrase), true)) {
+			positions.clear();
+			for (String word : phrase) {
+				positions.add(get(word, result.getWhere()));
+			}
+
+			int count = 0;
+			for (int position : positions.get(0)) {
+				boolean found = true;
+				for (int i = 1; i < positions.size() && found; i++) {
+					found = positions.get(i).contains(position + i);
+				}
+				if (found) {
+					count++;
+				}
+			}
+
+			if (count > 0) {
+				Result combined = new Result(result.getWhere(), result.getSnippet(), result.getTimestamp());
+				countsLock.readLock().lock();
+				try {
+					combined.update(count, counts.getOrDefault(result.getWhere(), count));
+				} finally {
+					countsLock.readLock().unlock();
+				}
+				results.add(combined);
+			}
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Combines the results of searching several stripes. Matches for the same
+	 * location are added together and scored against the total words of the
+	 * location, since each stripe only knows about its own words.
+	 *
+	 * @param found the results from each stripe
+	 * @return the combined sorted results
+	 */
+	private ArrayList<Result> combineResults(ArrayList<ArrayList<Result>> found) {
+		HashMap<String, Result> seen = new HashMap<String, Result>();
+		HashMap<String, Integer> matches = new HashMap<String, Integer>();
+
+		for (ArrayList<Result> other : found) {
+			for (Result result : other) {
+				seen.putIfAbsent(result.getWhere(), result);
+				matches.merge(result.getWhere(), result.getCount(), Integer::sum);
+			}
+		}
+
+		ArrayList<Result> results = new ArrayList<Result>();
+
+		countsLock.readLock().lock();
+		try {
+			for (Result result : seen.values()) {
+				int count = matches.get(result.getWhere());
+				Result combined = new Result(result.getWhere(), result.getSnippet(), result.getTimestamp());
+				combined.update(count, counts.getOrDefault(result.getWhere(), count));
+				results.add(combined);
+			}
+		} finally {
+			countsLock.readLock().unlock();
+		}
+
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Combines every stripe into a single index with the total words of each
+	 * location, holding the lock of every stripe so no writer is halfway done.
+	 *
+	 * @return the whole index
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex();
+
+		// always lock the stripes in the same order
+		for (SimpleReadWriteLock lock : locks) {
+			lock.readLock().lock();
+		}
+		countsLock.readLock().lock();
+		try {
+			for (InvertedIndex stripe : stripes) {
+				merged.combineIndex(stripe);
+			}
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				merged.setCount(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			countsLock.readLock().unlock();
+			for (SimpleReadWriteLock lock : locks) {
+				lock.readLock().unlock();
+			}
+		}
+
+		return merged;
+	}
+
+	@Override
+	public InvertedIndex[] split(int parts) {
+		return merged().split(parts);
+	}
+
+	@Override
+	public InvertedIndex[] splitByLocation(int parts) {
+		return merged().splitByLocation(parts);
+	}
+
+	@Override
+	public int size(String word) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].size(word);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public int size(String word, String path) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].size(word, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				size += stripes[i].size();
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public Set<String> get(String word) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].get(word);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<Integer> get(String location, String path) {
+		int i = stripe(location);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].get(location, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<String> get() {
+		TreeSet<String> words = new TreeSet<String>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words.addAll(stripes[i].get());
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].contains(word);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String path) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].contains(word, path);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String path, int position) {
+		int i = stripe(word);
+		locks[i].readLock().lock();
+		try {
+			return stripes[i].contains(word, path, position);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getCounts() {
+		countsLock.readLock().lock();
+		try {
+			return Collections.unmodifiableMap(new TreeMap<String, Integer>(counts));
+		} finally {
+			countsLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void writeJsonObject(Path path, JsonIndexWriter writer) throws IOException {
+		merged().writeJsonObject(path, writer);
+	}
+
+	@Override
+	public void writeCountsJsonObject(Path path) throws IOException {
+		SimpleJsonWriter.asObject(getCounts(), path);
+	}
+
+	@Override
+	public void writeSnapshot(Path path) throws IOException {
+		merged().writeSnapshot(path);
+	}
+
+	@Override
+	public void writeSegment(Path path) throws IOException {
+		merged().writeSegment(path);
+	}
+
+	@Override
+	public void compress() {
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				stripes[i].compress();
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+}
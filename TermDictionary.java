@@ -0,0 +1,281 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Frozen, read-only copy of the words in an inverted index stored as a sorted
+ * array, along with the postings of each word and a sorted array of the
+ * document ids in those postings. All words that start with a
+ * prefix are next to each other in the array, so the whole range of words
+ * matching a prefix is found with two binary searches instead of walking the
+ * tree one word at a time.
+ *
+ * Each word also stores the highest score it can add to any document, which is
+ * its largest count in a document divided by the total words of that document.
+ * Pruned search uses these bounds to skip documents that cannot make the top
+ * results.
+ *
+ * The postings are shared with the index, not copied, so they may still hold
+ * removed documents. The bounds and sorted document ids skip the documents
+ * removed when they were found, but documents removed later are only skipped
+ * by the search. When the postings of some words change, only those words are
+ * found again, since larger counts only lower the bounds of the others.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class TermDictionary {
+
+	/**
+	 * sorted words
+	 */
+	private final String[] terms;
+
+	/**
+	 * postings of each word, in the same order as the words
+	 */
+	private final ArrayList<TreeMap<Integer, PositionList>> postings;
+
+	/**
+	 * highest score each word adds to a document, in the same order as the words
+	 */
+	private final double[] bounds;
+
+	/**
+	 * sorted document ids of each word, in the same order as the words
+	 */
+	private final int[][] documents;
+
+	/**
+	 * Copies the words of the index into a sorted array and computes the score
+	 * bound of each word.
+	 *
+	 * @param index     the word to document id to positions map of the index
+	 * @param documents the document table of the index
+	 */
+	public TermDictionary(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents) {
+		terms = new String[index.size()];
+		postings = new ArrayList<TreeMap<Integer, PositionList>>(index.size());
+		bounds = new double[index.size()];
+		this.documents = new int[index.size()][];
+
+		int i = 0;
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> entry : index.entrySet()) {
+			terms[i] = entry.getKey();
+			postings.add(entry.getValue());
+			find(i, documents);
+			i++;
+		}
+	}
+
+	/**
+	 * Copies the words of the index into a sorted array after words were added,
+	 * reusing the score bounds and document ids of the words that did not change
+	 * since the previous dictionary.
+	 *
+	 * @param index     the word to document id to positions map of the index
+	 * @param documents the document table of the index
+	 * @param previous  the dictionary built before the words were added
+	 * @param changed   the words whose postings changed since the previous
+	 *                  dictionary
+	 */
+	public TermDictionary(TreeMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents,
+			TermDictionary previous, Set<String> changed) {
+		terms = new String[index.size()];
+		postings = new ArrayList<TreeMap<Integer, PositionList>>(index.size());
+		bounds = new double[index.size()];
+		this.documents = new int[index.size()][];
+
+		// both are sorted, so the previous words are found by walking along with
+		// the index
+		int old = 0;
+		int i = 0;
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> entry : index.entrySet()) {
+			String term = entry.getKey();
+			while (old < previous.terms.length && previous.terms[old].compareTo(term) < 0) {
+				old++;
+			}
+
+			terms[i] = term;
+			postings.add(entry.getValue());
+
+			if (old < previous.terms.length && previous.terms[old].equals(term) && !changed.contains(term)
+					&& previous.postings.get(old) == entry.getValue()) {
+				bounds[i] = previous.bounds[old];
+				this.documents[i] = previous.documents[old];
+			} else {
+				find(i, documents);
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Copies the dictionary with the same words, finding the score bounds and
+	 * document ids of the changed words again.
+	 *
+	 * @param previous  the dictionary to copy
+	 * @param changed   the words whose postings changed
+	 * @param documents the document table of the index
+	 */
+	private TermDictionary(TermDictionary previous, Set<String> changed, DocumentTable documents) {
+		terms = previous.terms;
+		postings = previous.postings;
+		bounds = previous.bounds.clone();
+		this.documents = previous.documents.clone();
+
+		for (String term : changed) {
+			int i = find(term);
+			if (i >= 0) {
+				find(i, documents);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the dictionary with the score bounds and document ids of
+	 * the changed words found again. The words must be the same, no word may have
+	 * been added.
+	 *
+	 * @param changed   the words whose postings changed
+	 * @param documents the document table of the index
+	 * @return the updated dictionary
+	 */
+	public TermDictionary update(Set<String> changed, DocumentTable documents) {
+		return new TermDictionary(this, changed, documents);
+	}
+
+	/**
+	 * Finds the score bound and sorted document ids of the word at the index from
+	 * its postings, skipping removed documents.
+	 *
+	 * @param i         the index of the word
+	 * @param documents the document table of the index
+	 */
+	private void find(int i, DocumentTable documents) {
+		TreeMap<Integer, PositionList> word = postings.get(i);
+		double bound = 0;
+		int[] ids = new int[word.size()];
+		int j = 0;
+		for (Map.Entry<Integer, PositionList> posting : word.entrySet()) {
+			if (!documents.isRemoved(posting.getKey())) {
+				bound = Math.max(bound, (double) posting.getValue().size() / documents.getCount(posting.getKey()));
+				ids[j++] = posting.getKey();
+			}
+		}
+
+		bounds[i] = bound;
+		this.documents[i] = j == ids.length ? ids : Arrays.copyOf(ids, j);
+	}
+
+	/**
+	 * Returns number of words in the dictionary
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Returns the word at the index.
+	 *
+	 * @param index the index of the word, from 0 to size - 1
+	 * @return the word
+	 */
+	public String getTerm(int index) {
+		return terms[index];
+	}
+
+	/**
+	 * Returns the postings of the word at the index.
+	 *
+	 * @param index the index of the word, from 0 to size - 1
+	 * @return map of document id to positions
+	 */
+	public TreeMap<Integer, PositionList> getPostings(int index) {
+		return postings.get(index);
+	}
+
+	/**
+	 * Returns the sorted document ids of the word at the index. The array is
+	 * shared, so it must not be modified.
+	 *
+	 * @param index the index of the word, from 0 to size - 1
+	 * @return sorted document ids
+	 */
+	public int[] getDocuments(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the highest score the word at the index adds to any document.
+	 *
+	 * @param index the index of the word, from 0 to size - 1
+	 * @return the score bound of the word
+	 */
+	public double getBound(int index) {
+		return bounds[index];
+	}
+
+	/**
+	 * Returns the index of the word, or -1 if it is not in the dictionary.
+	 *
+	 * @param term the word to look for
+	 * @return the index of the word or -1
+	 */
+	public int find(String term) {
+		int found = start(term);
+		return found < terms.length && terms[found].equals(term) ? found : -1;
+	}
+
+	/**
+	 * Returns the index of the first word that starts with the prefix.
+	 *
+	 * @param prefix the prefix to look for
+	 * @return the first index of the range, or the end of the range if no word
+	 *         starts with the prefix
+	 */
+	public int start(String prefix) {
+		int low = 0;
+		int high = terms.length;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (terms[middle].compareTo(prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the index after the last word that starts with the prefix. Every
+	 * word before the range is less than the prefix and every word in the range
+	 * starts with it, so the end is the first word that is neither.
+	 *
+	 * @param prefix the prefix to look for
+	 * @return the index after the last word of the range
+	 */
+	public int end(String prefix) {
+		int low = 0;
+		int high = terms.length;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (terms[middle].compareTo(prefix) < 0 || terms[middle].startsWith(prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+}
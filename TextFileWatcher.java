@@ -0,0 +1,275 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps an index built from a directory of text files up to date by watching the
+ * directory for changes. Only the files that were added, changed, or deleted
+ * are stemmed again or removed, instead of building the whole index again.
+ *
+ * Changes are collected until the directory has been quiet for a moment, so a
+ * file written in several steps is only stemmed once.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class TextFileWatcher implements Runnable, Closeable {
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** How long to wait for more changes before updating the index. */
+	private static final long QUIET_MILLIS = 200;
+
+	/** The directory or file the index was built from. */
+	private final Path start;
+
+	/** The index to keep up to date, must be safe to use from multiple threads. */
+	private final InvertedIndex index;
+
+	/** The service watching each directory. */
+	private final WatchService watcher;
+
+	/** The directory watched by each key. */
+	private final HashMap<WatchKey, Path> directories;
+
+	/**
+	 * Starts watching the directory and every directory inside it. If the start
+	 * path is a single file, its directory is watched for changes to that file.
+	 *
+	 * @param start the directory or file the index was built from
+	 * @param index the index to keep up to date, must be safe to use from multiple
+	 *              threads
+	 * @throws IOException if an IO error occurs
+	 */
+	public TextFileWatcher(Path start, InvertedIndex index) throws IOException {
+		this.start = start;
+		this.index = index;
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.directories = new HashMap<WatchKey, Path>();
+
+		if (Files.isDirectory(start)) {
+			registerAll(start);
+		} else {
+			register(start.toAbsolutePath().getParent());
+		}
+	}
+
+	/**
+	 * Watches for changes and updates the index until the watcher is closed or the
+	 * thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				LinkedHashSet<Path> changed = new LinkedHashSet<Path>();
+				boolean overflow = poll(watcher.take(), changed);
+
+				WatchKey key;
+				while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= poll(key, changed);
+				}
+
+				if (overflow) {
+					log.warn("Missed changes to {}, checking every file again", start);
+					updateAll();
+				} else {
+					for (Path path : changed) {
+						update(path);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			log.catching(Level.DEBUG, e);
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			log.catching(Level.DEBUG, e);
+		}
+	}
+
+	/**
+	 * Stops watching for changes.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+
+	/**
+	 * Collects the paths changed by the events of the key, and watches the key
+	 * again.
+	 *
+	 * @param key     the key with events
+	 * @param changed the paths changed so far
+	 * @return true if events were lost and every file must be checked again
+	 */
+	private boolean poll(WatchKey key, LinkedHashSet<Path> changed) {
+		Path directory = directories.get(key);
+		boolean overflow = false;
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			} else if (directory != null) {
+				Path path = directory.resolve((Path) event.context());
+
+				if (Files.isDirectory(start)) {
+					changed.add(path);
+				} else if (path.equals(start.toAbsolutePath())) {
+					// use the same location the file was first indexed with
+					changed.add(start);
+				}
+			}
+		}
+
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+
+		return overflow;
+	}
+
+	/**
+	 * Updates the index for a path that was added, changed, or deleted. New
+	 * directories are watched and their text files added, and the words of
+	 * deleted files and directories are removed.
+	 *
+	 * @param path the path that changed
+	 */
+	private void update(Path path) {
+		try {
+			if (Files.isDirectory(path)) {
+				registerAll(path);
+				for (Path file : TextFileFinder.getTextFiles(path)) {
+					restem(file);
+				}
+			} else if (Files.isRegularFile(path) && TextFileFinder.isTextFile(path)) {
+				restem(path);
+			} else {
+				removeAll(path);
+			}
+		} catch (IOException e) {
+			log.warn("Unable to update the index for {}: {}", path, e.getMessage());
+			log.catching(Level.DEBUG, e);
+		}
+	}
+
+	/**
+	 * Checks every file again after changes were missed, stemming every text file
+	 * and removing locations that no longer exist.
+	 */
+	private void updateAll() {
+		try {
+			HashSet<String> found = new HashSet<String>();
+			if (Files.isDirectory(start)) {
+				registerAll(start);
+			}
+
+			for (Path file : TextFileFinder.getTextFiles(start)) {
+				if (Files.isRegularFile(file)) {
+					restem(file);
+					found.add(file.toString());
+				}
+			}
+
+			for (String location : List.copyOf(index.getCounts().keySet())) {
+				if (isInside(location, start.toString()) && !found.contains(location)) {
+					index.remove(location);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Unable to update the index for {}: {}", start, e.getMessage());
+			log.catching(Level.DEBUG, e);
+		}
+	}
+
+	/**
+	 * Stems the file on its own and replaces its words in the index.
+	 *
+	 * @param file the text file to stem
+	 * @throws IOException if an IO error occurs
+	 */
+	private void restem(Path file) throws IOException {
+		InvertedIndex local = new InvertedIndex();
+		InvertedIndexBuilder.stemFile(file, local);
+
+		index.replace(file.toString(), local);
+		log.debug("Updated the index for {}", file);
+	}
+
+	/**
+	 * Removes the words of the location, or of every location inside it if it was
+	 * a directory.
+	 *
+	 * @param path the path that was deleted
+	 */
+	private void removeAll(Path path) {
+		String deleted = path.toString();
+
+		for (String location : List.copyOf(index.getCounts().keySet())) {
+			if (location.equals(deleted) || isInside(location, deleted)) {
+				index.remove(location);
+				log.debug("Removed {} from the index", location);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the location is inside the directory.
+	 *
+	 * @param location  the location to check
+	 * @param directory the directory to check
+	 * @return boolean
+	 */
+	private static boolean isInside(String location, String directory) {
+		String separator = FileSystems.getDefault().getSeparator();
+		return location.startsWith(directory.endsWith(separator) ? directory : directory + separator);
+	}
+
+	/**
+	 * Watches the directory and every directory inside it.
+	 *
+	 * @param directory the directory to watch
+	 * @throws IOException if an IO error occurs
+	 */
+	private void registerAll(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+				register(path);
+			}
+		}
+	}
+
+	/**
+	 * Watches the directory for files being added, changed, or deleted.
+	 *
+	 * @param directory the directory to watch
+	 * @throws IOException if an IO error occurs
+	 */
+	private void register(Path directory) throws IOException {
+		WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		directories.put(key, directory);
+	}
+}
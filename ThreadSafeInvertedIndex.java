@@ -2,7 +2,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ThreadSafeInvertedIndex class to store words and their occurrences.
@@ -16,12 +19,36 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	/** The lock used to protect concurrent access to the underlying index. */
 	private final SimpleReadWriteLock lock;
 
+	/** Whether a compactor thread has been started and not finished yet. */
+	private final AtomicBoolean compacting;
+
 	/**
-	 * initializes a thread safe inverted index
+	 * initializes a thread safe inverted index whose lock lets waiting writers go
+	 * before new readers, so updates are not held up by a steady stream of
+	 * searches
 	 */
 	public ThreadSafeInvertedIndex() {
+		this(SimpleReadWriteLock.Fairness.WRITER_PREFERRING);
+	}
+
+	/**
+	 * initializes a thread safe inverted index
+	 *
+	 * @param fairness the order waiting readers and writers acquire the lock in
+	 */
+	public ThreadSafeInvertedIndex(SimpleReadWriteLock.Fairness fairness) {
 		super();
-		lock = new SimpleReadWriteLock();
+		lock = new SimpleReadWriteLock(fairness);
+		compacting = new AtomicBoolean();
+	}
+
+	/**
+	 * Returns the order waiting readers and writers acquire the lock in.
+	 *
+	 * @return the fairness
+	 */
+	public SimpleReadWriteLock.Fairness fairness() {
+		return lock.fairness();
 	}
 
 	@Override
@@ -115,10 +142,10 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 
 	@Override
-	public void writeJsonObject(Path path) throws IOException {
+	public void writeJsonObject(Path path, JsonIndexWriter writer) throws IOException {
 		lock.readLock().lock();
 		try {
-			super.writeJsonObject(path);
+			super.writeJsonObject(path, writer);
 		} finally {
 			lock.readLock().unlock();
 		}
@@ -134,6 +161,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public void writeSnapshot(Path path) throws IOException {
+		lock.readLock().lock();
+		try {
+			super.writeSnapshot(path);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void writeSegment(Path path) throws IOException {
+		lock.readLock().lock();
+		try {
+			super.writeSegment(path);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void add(String word, String path, int position) {
 		lock.writeLock().lock();
@@ -154,6 +201,115 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public boolean remove(String location) {
+		boolean removed;
+
+		lock.writeLock().lock();
+		try {
+			removed = super.remove(location);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		compactLater();
+		return removed;
+	}
+
+	/**
+	 * Replaces the words of the location while holding the write lock, so no
+	 * search finds the location missing in between.
+	 *
+	 * @param location the path or url to replace
+	 * @param other    the index with the new words of the location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex other) {
+		lock.writeLock().lock();
+		try {
+			super.remove(location);
+			super.combineIndex(other);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		compactLater();
+	}
+
+	/**
+	 * Returns the number of tombstones, without waiting for the lock unless a
+	 * writer is active, since only a few counts are read.
+	 *
+	 * @return number of tombstones
+	 */
+	@Override
+	public int tombstones() {
+		return lock.optimisticRead(super::tombstones);
+	}
+
+	/**
+	 * Checks whether to compact after every update, without waiting for the lock
+	 * unless a writer is active, since only a few counts are read.
+	 *
+	 * @return boolean
+	 */
+	@Override
+	boolean needsCompaction() {
+		return lock.optimisticRead(super::needsCompaction);
+	}
+
+	@Override
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			super.compact();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Starts a compactor thread if enough documents have been removed and one is
+	 * not running already.
+	 */
+	void compactLater() {
+		if (needsCompaction() && compacting.compareAndSet(false, true)) {
+			Compactor compactor = new Compactor();
+			compactor.setDaemon(true);
+			compactor.start();
+		}
+	}
+
+	@Override
+	public void compress() {
+		lock.writeLock().lock();
+		try {
+			super.compress();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public InvertedIndex[] split(int parts) {
+		lock.readLock().lock();
+		try {
+			return super.split(parts);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public InvertedIndex[] splitByLocation(int parts) {
+		lock.readLock().lock();
+		try {
+			return super.splitByLocation(parts);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public ArrayList<Result> exactSearch(Set<String> queries) {
 		lock.readLock().lock();
@@ -174,6 +330,56 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public TopResults exactSearch(Set<String> queries, int k) {
+		lock.readLock().lock();
+		try {
+			return super.exactSearch(queries, k);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public TopResults partialSearch(Set<String> queries, int k) {
+		lock.readLock().lock();
+		try {
+			return super.partialSearch(queries, k);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public TopResults prunedSearch(Set<String> queries, boolean exact, int k) {
+		lock.readLock().lock();
+		try {
+			return super.prunedSearch(queries, exact, k);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> andSearch(Set<String> queries, boolean exact) {
+		lock.readLock().lock();
+		try {
+			return super.andSearch(queries, exact);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> phraseSearch(List<String> phrase) {
+		lock.readLock().lock();
+		try {
+			return super.phraseSearch(phrase);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void combineIndex(InvertedIndex localIndex) {
 		lock.writeLock().lock();
@@ -184,6 +390,16 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public Map<String, Integer> getCounts() {
+		lock.readLock().lock();
+		try {
+			return super.getCounts();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public String toString() {
 		lock.readLock().lock();
@@ -194,4 +410,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Background thread that compacts the index once, and starts again if enough
+	 * documents were removed in the meantime.
+	 */
+	private class Compactor extends Thread {
+		/**
+		 * Initializes the compactor thread with a custom name.
+		 */
+		public Compactor() {
+			setName("Compactor" + getName());
+		}
+
+		@Override
+		public void run() {
+			try {
+				compact();
+			} finally {
+				compacting.set(false);
+			}
+			compactLater();
+		}
+	}
 }
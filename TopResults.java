@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * The best results of a search along with the total number of documents that
+ * matched, for callers that only show the first page of results.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class TopResults {
+
+	/** The best results, sorted. */
+	private final ArrayList<InvertedIndex.Result> results;
+
+	/** The number of documents that matched. */
+	private final int total;
+
+	/** Whether every matching document was counted. */
+	private final boolean exact;
+
+	/**
+	 * constructor
+	 *
+	 * @param results the best results, sorted
+	 * @param total   the number of documents that matched
+	 */
+	public TopResults(ArrayList<InvertedIndex.Result> results, int total) {
+		this(results, total, true);
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param results the best results, sorted
+	 * @param total   the number of documents that matched, or a lower bound
+	 * @param exact   whether every matching document was counted
+	 */
+	public TopResults(ArrayList<InvertedIndex.Result> results, int total, boolean exact) {
+		this.results = results;
+		this.total = total;
+		this.exact = exact;
+	}
+
+	/**
+	 * Keeps the k best results using a heap of at most k results with the worst
+	 * one on top, so the other results are never sorted.
+	 *
+	 * @param found the results to choose from, in any order
+	 * @param k     the number of results to keep
+	 * @return the k best results, sorted
+	 */
+	public static TopResults of(Collection<InvertedIndex.Result> found, int k) {
+		ArrayList<InvertedIndex.Result> results = new ArrayList<InvertedIndex.Result>();
+
+		if (k > 0) {
+			PriorityQueue<InvertedIndex.Result> heap = new PriorityQueue<InvertedIndex.Result>(
+					Math.min(k, Math.max(1, found.size())), Collections.reverseOrder());
+
+			for (InvertedIndex.Result result : found) {
+				if (heap.size() < k) {
+					heap.add(result);
+				} else if (result.compareTo(heap.peek()) < 0) {
+					heap.poll();
+					heap.add(result);
+				}
+			}
+
+			results.addAll(heap);
+			Collections.sort(results);
+		}
+
+		return new TopResults(results, found.size());
+	}
+
+	/**
+	 * Returns the best results
+	 *
+	 * @return sorted list of at most k results
+	 */
+	public ArrayList<InvertedIndex.Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns the number of documents that matched the search, which may be more
+	 * than the number of results kept.
+	 *
+	 * @return the number of matching documents
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns whether the total is the exact number of matching documents, or
+	 * only a lower bound because a pruned search skipped some of them.
+	 *
+	 * @return true if the total is exact
+	 */
+	public boolean isTotalExact() {
+		return exact;
+	}
+}
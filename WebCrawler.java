@@ -55,7 +55,9 @@ public class WebCrawler {
 	 */
 	public void startBuild(URL start) {
 		visitedUrls.add(start);
-		wq.execute(new Task(start));
+		// normal, not background, since the crawl finishes before any searches and
+		// holding a worker back would only slow it down
+		wq.executeOrRun(new Task(start), WorkQueue.Priority.NORMAL);
 		wq.finish();
 	}
 
@@ -101,16 +103,22 @@ public class WebCrawler {
 			// IFF we havent hit our total urls limit yet then
 			// execute a task with the wq if the link has not already been parsed.. so need
 			// to make a set of parsed links
+			List<URL> found = new ArrayList<>();
 			synchronized (visitedUrls) {
 				for (URL parsed : parsedUrls) {
 					if (!visitedUrls.contains(parsed) && visitedUrls.size() < total) {
 						visitedUrls.add(parsed);
-						wq.execute(new Task(parsed));
+						found.add(parsed);
 					}
 
 				}
 			}
 
+			// added outside the lock, since a full work queue may run a page right here
+			for (URL parsed : found) {
+				wq.executeOrRun(new Task(parsed), WorkQueue.Priority.NORMAL);
+			}
+
 			String cleanedHtml = HtmlCleaner.stripHtml(html);
 			SnowballStemmer stemmer = new SnowballStemmer(TextFileStemmer.ENGLISH);
 
@@ -125,9 +133,15 @@ public class WebCrawler {
 						new Timestamp(System.currentTimeMillis()));
 				position++;
 			}
-			index.combineIndex(localIndex);
+			// a page crawled again replaces its old words instead of adding to them
+			index.replace(url.toString(), localIndex);
 
 		}
 
+		@Override
+		public String toString() {
+			return url.toString();
+		}
+
 	}
 }
@@ -1,4 +1,19 @@
-import java.util.LinkedList;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -9,6 +24,32 @@ import org.apache.logging.log4j.Logger;
  * Brian Goetz. Modified to keep track of the amount of pending or unfinished
  * work (or tasks) must still be completed.
  *
+ * <p>
+ * Tasks are either kept in one shared queue, or with the
+ * {@link Scheduler#STEALING} scheduler in a deque for each worker that idle
+ * workers steal from. The second avoids every worker and producer taking the
+ * same lock for every task, which matters when there are many small tasks.
+ * The number of pending tasks can be bounded, and what happens to tasks added
+ * when it is full chosen with {@link Overflow}, so a producer that is faster
+ * than the workers can not fill the heap. Otherwise it is unbounded.
+ *
+ * <p>
+ * Tasks can be given a {@link Priority}. Interactive tasks always start before
+ * normal ones, and those before background ones, and background tasks never
+ * take up every worker, so long bulk work does not hold up searches added to
+ * the same work queue.
+ *
+ * <p>
+ * Tasks that compute a result can be added with {@link #submit(Callable)}, which
+ * returns a future for it, so callers can collect results without sharing state
+ * with the tasks.
+ *
+ * <p>
+ * How long tasks wait and run, and how busy the workers are, is recorded in
+ * {@link #metrics()} and can be logged periodically with {@link #report(long)}.
+ * With the {@link Scheduler#THREAD_PER_TASK} scheduler there are no workers, and
+ * each task gets its own thread instead.
+ *
  * @see <a href=
  *      "https://web.archive.org/web/20210126172022/https://www.ibm.com/developerworks/library/j-jtp0730/index.html">
  *      Java Theory and Practice: Thread Pools and Work Queues</a>
@@ -18,11 +59,124 @@ import org.apache.logging.log4j.Logger;
  */
 public class WorkQueue {
 
+	/**
+	 * How tasks are handed to the workers.
+	 */
+	public enum Scheduler {
+		/** Workers take tasks from one queue shared by all, in the order added. */
+		SHARED,
+
+		/**
+		 * Each worker takes the tasks it added itself first, newest first, then the
+		 * tasks added from other threads, and then steals the oldest tasks of other
+		 * workers. Idle workers wait on their own and are woken one at a time.
+		 */
+		STEALING,
+
+		/**
+		 * Each task runs on its own thread, up to a limit of tasks running at the
+		 * same time, and later tasks wait in order for one to finish. The threads are
+		 * virtual threads if the Java runtime has them, otherwise daemon threads with
+		 * a small stack. Meant for tasks that spend most of their time waiting, such
+		 * as fetching web pages.
+		 */
+		THREAD_PER_TASK
+	}
+
+	/**
+	 * Which tasks start first when several are waiting.
+	 */
+	public enum Priority {
+		/** Tasks someone is waiting on, such as searches. Start before any other. */
+		INTERACTIVE,
+
+		/** Tasks added without a priority. */
+		NORMAL,
+
+		/**
+		 * Bulk work that shares the work queue with searches. Only starts when no
+		 * other tasks are waiting, and never on every worker at once, so one is
+		 * always left for the other tasks.
+		 */
+		BACKGROUND
+	}
+
+	/**
+	 * What happens to a task added when the work queue is full.
+	 */
+	public enum Overflow {
+		/**
+		 * The thread adding the task waits until there is room. Tasks added by the
+		 * work queue's own threads are run by them instead, since if they all waited
+		 * no task would ever finish to make room.
+		 */
+		BLOCK,
+
+		/** The thread adding the task runs it itself. */
+		CALLER_RUNS,
+
+		/**
+		 * The task is not run and is handed to the rejected callback instead. Tasks
+		 * added with {@link WorkQueue#executeOrRun(Runnable, Priority)} or
+		 * {@link WorkQueue#submitOrRun(Callable, Priority)} are run by the thread
+		 * adding them instead, since they must not be dropped.
+		 */
+		REJECT
+	}
+
 	/** Workers that wait until work (or tasks) are available. */
 	private final Worker[] workers;
 
-	/** Queue of pending work (or tasks). */
-	private final LinkedList<Runnable> tasks;
+	/** How tasks are handed to the workers. */
+	private final Scheduler scheduler;
+
+	/**
+	 * Queue of pending work (or tasks), used by the shared scheduler, and by the
+	 * thread per task scheduler for tasks waiting for the limit.
+	 */
+	private final Lanes tasks;
+
+	/** Interactive tasks, used by the stealing scheduler. */
+	private final ConcurrentLinkedQueue<Queued> urgent;
+
+	/** Background tasks, used by the stealing scheduler. */
+	private final ConcurrentLinkedQueue<Queued> background;
+
+	/** The number of background tasks running. */
+	private final AtomicInteger backgroundRunning;
+
+	/** The most background tasks allowed to run at the same time. */
+	private final int backgroundLimit;
+
+	/** The number of tasks allowed to run at the same time. */
+	private final int limit;
+
+	/** The most tasks added and not finished at once. */
+	private final int capacity;
+
+	/** What happens to a task added when the work queue is full. */
+	private final Overflow overflow;
+
+	/** Handles tasks rejected when the work queue is full. */
+	private final Consumer<Runnable> rejected;
+
+	/** Used to wait for room when the work queue is full. */
+	private final Object room;
+
+	/** The number of threads waiting for room, guarded by {@link #room}. */
+	private volatile int blocked;
+
+	/** The number of task threads running, used by the thread per task scheduler. */
+	private int running;
+
+	/** The number of task threads waiting for a new task before ending. */
+	private int waiting;
+
+	/** Tasks added from outside the workers, used by the stealing scheduler. */
+	private final ConcurrentLinkedQueue<Queued> submitted;
+
+	/** Workers waiting for tasks, used by the stealing scheduler. */
+	private final ConcurrentLinkedDeque<Worker> idle;
 
 	/** Used to signal the workers should terminate. */
 	private volatile boolean shutdown;
@@ -30,11 +184,35 @@ public class WorkQueue {
 	/** The default number of worker threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
+	/**
+	 * How many times an idle worker looks for tasks again before waiting. Looking
+	 * again only helps if another thread can add a task at the same time.
+	 */
+	private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+	/** How long a task thread waits for a new task before ending. */
+	private static final long KEEP_ALIVE_MILLIS = 1000;
+
+	/** The stack size of task threads when there are no virtual threads. */
+	private static final long STACK_SIZE = 256 * 1024;
+
 	/** Logger used for this class. */
 	private static final Logger log = LogManager.getLogger();
 
-	/** Logger used for this class. */
-	private int pending;
+	/** Creates the threads used by the thread per task scheduler. */
+	private static final ThreadFactory TASK_THREADS = taskThreads();
+
+	/** The work queue the current thread runs tasks for, if any. */
+	private static final ThreadLocal<WorkQueue> OWNER = new ThreadLocal<WorkQueue>();
+
+	/** Number of tasks added that are not finished yet. */
+	private final AtomicInteger pending;
+
+	/** How long tasks wait and run, and how busy the workers are. */
+	private final WorkQueueMetrics metrics;
+
+	/** The thread logging the metrics periodically, or null. */
+	private volatile Thread reporter;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -43,7 +221,6 @@ public class WorkQueue {
 	 */
 	public WorkQueue() {
 		this(DEFAULT);
-		this.pending = 0;
 	}
 
 	/**
@@ -52,31 +229,345 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.tasks = new LinkedList<Runnable>();
-		this.workers = new Worker[threads];
+		this(threads, Scheduler.SHARED);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads and scheduler.
+	 *
+	 * @param threads   number of worker threads; should be greater than 1. For the
+	 *                  thread per task scheduler, the number of tasks allowed to
+	 *                  run at the same time instead.
+	 * @param scheduler how tasks are handed to the workers
+	 */
+	public WorkQueue(int threads, Scheduler scheduler) {
+		this(threads, scheduler, Integer.MAX_VALUE, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue that holds at most the capacity of tasks added and not
+	 * finished. Rejected tasks are logged.
+	 *
+	 * @param threads   number of worker threads; should be greater than 1. For the
+	 *                  thread per task scheduler, the number of tasks allowed to
+	 *                  run at the same time instead.
+	 * @param scheduler how tasks are handed to the workers
+	 * @param capacity  the most tasks added and not finished at once, including
+	 *                  those running
+	 * @param overflow  what happens to a task added when the work queue is full
+	 */
+	public WorkQueue(int threads, Scheduler scheduler, int capacity, Overflow overflow) {
+		this(threads, scheduler, capacity, overflow,
+				task -> log.warn("Work queue is full, rejected a task: {}", task));
+	}
+
+	/**
+	 * Starts a work queue that holds at most the capacity of tasks added and not
+	 * finished.
+	 *
+	 * @param threads   number of worker threads; should be greater than 1. For the
+	 *                  thread per task scheduler, the number of tasks allowed to
+	 *                  run at the same time instead.
+	 * @param scheduler how tasks are handed to the workers
+	 * @param capacity  the most tasks added and not finished at once, including
+	 *                  those running
+	 * @param overflow  what happens to a task added when the work queue is full
+	 * @param rejected  handles tasks rejected when the work queue is full, called
+	 *                  by the thread adding the task
+	 */
+	public WorkQueue(int threads, Scheduler scheduler, int capacity, Overflow overflow,
+			Consumer<Runnable> rejected) {
+		this.scheduler = scheduler;
+		this.capacity = Math.max(capacity, 1);
+		this.overflow = overflow;
+		this.rejected = rejected;
+		this.room = new Object();
+		this.blocked = 0;
+		this.tasks = new Lanes();
+		this.urgent = new ConcurrentLinkedQueue<Queued>();
+		this.background = new ConcurrentLinkedQueue<Queued>();
+		this.backgroundRunning = new AtomicInteger();
+		this.backgroundLimit = Math.max(threads - 1, 1);
+		this.submitted = new ConcurrentLinkedQueue<Queued>();
+		this.idle = new ConcurrentLinkedDeque<Worker>();
+		this.limit = threads;
+		this.running = 0;
+		this.waiting = 0;
+		this.workers = new Worker[scheduler == Scheduler.THREAD_PER_TASK ? 0 : threads];
 		this.shutdown = false;
-		this.pending = 0;
+		this.pending = new AtomicInteger();
+		this.metrics = scheduler == Scheduler.THREAD_PER_TASK ? new WorkQueueMetrics(1, threads)
+				: new WorkQueueMetrics(threads, 1);
+		this.reporter = null;
+
+		// every worker must exist before any starts looking for tasks to steal
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i);
+		}
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
-			workers[i] = new Worker();
-			workers[i].start();
+		for (Worker worker : workers) {
+			worker.start();
 		}
 	}
 
 	/**
 	 * Adds a work (or task) request to the queue and increments the amount of
 	 * pending tasks that must be completed. A worker thread will process this
-	 * request when available.
+	 * request when available. If the work queue is full, the task is handled as
+	 * chosen by its {@link Overflow} instead.
 	 *
-	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @param work work request (in the form of a {@link Runnable} object)
 	 */
-	public void execute(Runnable task) {
-		incrementPending();
-		synchronized (tasks) {
-			tasks.addLast(task);
-			tasks.notifyAll();
+	public void execute(Runnable work) {
+		execute(work, Priority.NORMAL);
+	}
+
+	/**
+	 * Adds a work (or task) request to the queue with a priority.
+	 *
+	 * @param work     work request (in the form of a {@link Runnable} object)
+	 * @param priority which tasks start first when several are waiting
+	 * @see #execute(Runnable)
+	 */
+	public void execute(Runnable work, Priority priority) {
+		add(work, priority, false);
+	}
+
+	/**
+	 * Adds a work (or task) request that must not be dropped. If the work queue
+	 * is full and rejects tasks, or the calling thread is interrupted while waiting
+	 * for room, the task runs on the calling thread instead.
+	 *
+	 * @param work     work request (in the form of a {@link Runnable} object)
+	 * @param priority which tasks start first when several are waiting
+	 * @see #execute(Runnable, Priority)
+	 */
+	public void executeOrRun(Runnable work, Priority priority) {
+		add(work, priority, true);
+	}
+
+	/**
+	 * Adds a task to the queue, handling it with the overflow if the work queue is
+	 * full.
+	 *
+	 * @param work     the task to add
+	 * @param priority which tasks start first when several are waiting
+	 * @param keep     whether the task must run instead of being rejected
+	 */
+	private void add(Runnable work, Priority priority, boolean keep) {
+		if (!admit(work, keep)) {
+			return;
+		}
+
+		Queued task = new Queued(work, priority);
+
+		if (scheduler == Scheduler.SHARED) {
+			synchronized (tasks) {
+				tasks.add(task);
+				// every waiting worker is the same, so one is enough for one task
+				tasks.notify();
+			}
+		} else if (scheduler == Scheduler.THREAD_PER_TASK) {
+			Queued next;
+
+			synchronized (tasks) {
+				tasks.add(task);
+
+				if (running >= limit || waiting > 0) {
+					tasks.notify();
+					return;
+				}
+
+				// the task added may be held back behind others, or may go ahead of them
+				next = tasks.poll();
+				if (next == null) {
+					return;
+				}
+				running++;
+			}
+
+			TASK_THREADS.newThread(() -> runTasks(next)).start();
+		} else {
+			if (priority == Priority.INTERACTIVE) {
+				urgent.add(task);
+			} else if (priority == Priority.BACKGROUND) {
+				background.add(task);
+			} else if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+				worker.local.addFirst(task);
+			} else {
+				submitted.add(task);
+			}
+
+			Worker waiting = idle.poll();
+			if (waiting != null) {
+				LockSupport.unpark(waiting);
+			}
+		}
+	}
+
+	/**
+	 * Adds a task that computes a result to the queue. The future completes with
+	 * the result, or exceptionally if the task throws or is rejected because the
+	 * work queue is full. Cancelling the future before the task starts keeps it
+	 * from running.
+	 *
+	 * @param <T>  the type of the result
+	 * @param task the task to run
+	 * @return the future result of the task
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		return submit(task, Priority.NORMAL);
+	}
+
+	/**
+	 * Adds a task that computes a result to the queue with a priority.
+	 *
+	 * @param <T>      the type of the result
+	 * @param task     the task to run
+	 * @param priority which tasks start first when several are waiting
+	 * @return the future result of the task
+	 * @see #submit(Callable)
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task, Priority priority) {
+		Submitted<T> submitted = new Submitted<T>(task);
+		execute(submitted, priority);
+		return submitted.future;
+	}
+
+	/**
+	 * Adds a task that computes a result and must not be dropped. If the work
+	 * queue is full and rejects tasks, the task runs on the calling thread
+	 * instead, and the future is already complete when returned.
+	 *
+	 * @param <T>      the type of the result
+	 * @param task     the task to run
+	 * @param priority which tasks start first when several are waiting
+	 * @return the future result of the task
+	 * @see #submit(Callable, Priority)
+	 */
+	public <T> CompletableFuture<T> submitOrRun(Callable<T> task, Priority priority) {
+		Submitted<T> submitted = new Submitted<T>(task);
+		executeOrRun(submitted, priority);
+		return submitted.future;
+	}
+
+	/**
+	 * Adds every task to the queue and waits for all of them to finish. Must not
+	 * be called from a task of this work queue, since waiting there could leave no
+	 * worker to run the tasks.
+	 *
+	 * @param <T>   the type of the results
+	 * @param tasks the tasks to run
+	 * @return the completed future of each task, in the same order
+	 */
+	public <T> List<CompletableFuture<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+		ArrayList<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(tasks.size());
+
+		for (Callable<T> task : tasks) {
+			futures.add(submit(task));
+		}
+
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			// every future is done, failed ones are left for the caller to check
+			log.catching(Level.DEBUG, e);
+		}
+
+		return futures;
+	}
+
+	/**
+	 * Counts the task as pending if there is room for it, or handles it as chosen
+	 * by the overflow if there is not. A task that must be kept is run by the
+	 * calling thread whenever it would otherwise be rejected.
+	 *
+	 * @param work the task being added
+	 * @param keep whether the task must run instead of being rejected
+	 * @return true if the task should be added, false if it was already handled
+	 */
+	private boolean admit(Runnable work, boolean keep) {
+		if (capacity == Integer.MAX_VALUE) {
+			metrics.submitted(pending.incrementAndGet());
+			return true;
 		}
+
+		while (true) {
+			int now = pending.get();
+
+			if (now < capacity || shutdown) {
+				if (pending.compareAndSet(now, now + 1)) {
+					metrics.submitted(now + 1);
+					return true;
+				}
+				continue;
+			}
+
+			if (overflow == Overflow.REJECT && !keep) {
+				reject(work);
+				return false;
+			}
+
+			if (overflow != Overflow.BLOCK || OWNER.get() == this) {
+				runHere(work);
+				return false;
+			}
+
+			boolean interrupted = false;
+
+			synchronized (room) {
+				blocked++;
+				try {
+					while (pending.get() >= capacity && !shutdown) {
+						room.wait();
+					}
+				} catch (InterruptedException e) {
+					log.catching(Level.DEBUG, e);
+					Thread.currentThread().interrupt();
+					interrupted = true;
+				} finally {
+					blocked--;
+				}
+			}
+
+			if (interrupted) {
+				if (keep) {
+					runHere(work);
+				} else {
+					reject(work);
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Runs a task that did not fit on the calling thread.
+	 *
+	 * @param work the task to run
+	 */
+	private void runHere(Runnable work) {
+		// counted as pending while it runs so finish() still waits for it, but not
+		// as a background task since it does not take up a worker
+		metrics.submitted(pending.incrementAndGet());
+		run(new Queued(work, Priority.NORMAL), -1);
+	}
+
+	/**
+	 * Hands a task that did not fit to the rejected callback, and fails its future
+	 * if it has one.
+	 *
+	 * @param work the task rejected
+	 */
+	private void reject(Runnable work) {
+		metrics.rejectedTask();
+
+		if (work instanceof Submitted<?> submitted) {
+			submitted.future.completeExceptionally(new RejectedExecutionException("Work queue is full"));
+		}
+
+		rejected.accept(work);
 	}
 
 	/**
@@ -84,33 +575,180 @@ public class WorkQueue {
 	 * worker threads so that the work queue can continue to be used.
 	 *
 	 */
-	public synchronized void finish() {
+	public void finish() {
+		if (pending.get() == 0) {
+			return;
+		}
+
+		synchronized (this) {
+			try {
+				while (pending.get() > 0) {
+					this.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Runs the task on a task thread, and then the tasks waiting for the limit
+	 * until there are none left. The thread waits a moment for new tasks before
+	 * ending, so many small tasks do not each start a thread.
+	 *
+	 * @param task the first task to run
+	 */
+	private void runTasks(Queued task) {
+		OWNER.set(this);
+
+		while (task != null) {
+			run(task, 0);
+			task = nextTask();
+		}
+	}
+
+	/**
+	 * Waits a moment for the next task for a task thread.
+	 *
+	 * @return the task, or null if the thread should end
+	 */
+	private Queued nextTask() {
+		synchronized (tasks) {
+			long deadline = System.currentTimeMillis() + KEEP_ALIVE_MILLIS;
+			long remaining = KEEP_ALIVE_MILLIS;
+			Queued task = null;
+
+			try {
+				while (!shutdown && (task = tasks.poll()) == null && remaining > 0) {
+					waiting++;
+					try {
+						tasks.wait(remaining);
+					} finally {
+						waiting--;
+					}
+					remaining = deadline - System.currentTimeMillis();
+				}
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+			}
+
+			if (shutdown || task == null) {
+				if (task != null) {
+					finished(task);
+				}
+
+				running--;
+				return null;
+			}
+
+			return task;
+		}
+	}
+
+	/**
+	 * Runs the task, records how long it waited and ran, and decrements the
+	 * pending count once it is done, even if it failed.
+	 *
+	 * @param task   the task to run
+	 * @param worker the worker running the task, 0 for task threads, or -1 if run
+	 *               by the thread adding it
+	 */
+	private void run(Queued task, int worker) {
+		long start = System.nanoTime();
+		boolean threw = true;
+		metrics.started(start - task.added);
+
 		try {
-			while (pending > 0) {
-				this.wait();
+			log.trace("Work queue worker found work.");
+			task.work.run();
+			threw = false;
+		} catch (RuntimeException e) {
+			// catch runtime exceptions to avoid leaking threads
+			log.catching(Level.DEBUG, e);
+		} catch (Error e) {
+			// an error only ends this task, otherwise finish() would wait forever
+			log.catching(Level.ERROR, e);
+		} finally {
+			metrics.finished(worker, System.nanoTime() - start, threw);
+			finished(task);
+			decrementPending();
+		}
+	}
+
+	/**
+	 * Makes room for another background task once one is done. If background
+	 * tasks were held back because the most were running, a thread is woken or
+	 * started to run the next one.
+	 *
+	 * @param task the task done, or taken but never run
+	 */
+	private void finished(Queued task) {
+		if (task.priority != Priority.BACKGROUND || backgroundRunning.getAndDecrement() != backgroundLimit) {
+			return;
+		}
+
+		if (scheduler == Scheduler.STEALING) {
+			Worker waiting = idle.poll();
+			if (waiting != null) {
+				LockSupport.unpark(waiting);
+			}
+			return;
+		}
+
+		Queued next = null;
+
+		synchronized (tasks) {
+			if (scheduler == Scheduler.SHARED || waiting > 0) {
+				tasks.notify();
+			} else if (running < limit && !shutdown && (next = tasks.poll()) != null) {
+				running++;
 			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
+		}
+
+		if (next != null) {
+			Queued first = next;
+			TASK_THREADS.newThread(() -> runTasks(first)).start();
 		}
 	}
 
 	/**
-	 * Safely increments the shared pending variable.
+	 * Counts a background task as running if there is room for it.
+	 *
+	 * @return true if the background task may start
 	 */
-	private synchronized void incrementPending() {
-		pending++;
+	private boolean startBackground() {
+		while (true) {
+			int now = backgroundRunning.get();
+
+			if (now >= backgroundLimit) {
+				return false;
+			}
+
+			if (backgroundRunning.compareAndSet(now, now + 1)) {
+				return true;
+			}
+		}
 	}
 
 	/**
-	 * Safely decrements the shared pending variable, and wakes up any threads
-	 * waiting for work to be completed.
+	 * Decrements the pending count, and wakes up any threads waiting for work to
+	 * be completed when it reaches zero, or waiting for room. Only then is a lock
+	 * taken.
 	 */
-	private synchronized void decrementPending() {
-		assert pending > 0;
-		pending--;
+	private void decrementPending() {
+		int left = pending.decrementAndGet();
+		assert left >= 0;
+
+		if (blocked > 0 && left < capacity) {
+			synchronized (room) {
+				room.notify();
+			}
+		}
 
-		if (pending == 0) {
-			this.notifyAll();
+		if (left == 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
 		}
 	}
 
@@ -125,6 +763,56 @@ public class WorkQueue {
 		synchronized (tasks) {
 			tasks.notifyAll();
 		}
+
+		for (Worker worker : workers) {
+			LockSupport.unpark(worker);
+		}
+
+		synchronized (room) {
+			room.notifyAll();
+		}
+
+		Thread reporter = this.reporter;
+		if (reporter != null) {
+			reporter.interrupt();
+			log.info("Work queue: {}", metrics.report());
+		}
+	}
+
+	/**
+	 * Returns how long tasks wait and run, and how busy the workers are.
+	 *
+	 * @return the metrics
+	 */
+	public WorkQueueMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Logs the metrics periodically until the work queue is shutdown, and once
+	 * more when it is.
+	 *
+	 * @param millis how often to log the metrics in milliseconds
+	 */
+	public synchronized void report(long millis) {
+		if (reporter != null || shutdown) {
+			return;
+		}
+
+		Thread thread = new Thread(() -> {
+			try {
+				while (!shutdown) {
+					Thread.sleep(millis);
+					log.info("Work queue: {}", metrics.report());
+				}
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+			}
+		}, "WorkQueueMetrics");
+
+		thread.setDaemon(true);
+		thread.start();
+		reporter = thread;
 	}
 
 	/**
@@ -148,12 +836,175 @@ public class WorkQueue {
 	}
 
 	/**
-	 * Returns the number of worker threads being used by the work queue.
+	 * Returns the number of worker threads being used by the work queue, or the
+	 * number of tasks allowed to run at the same time for the thread per task
+	 * scheduler.
 	 *
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		return limit;
+	}
+
+	/**
+	 * Creates the thread factory for task threads, which makes virtual threads if
+	 * the Java runtime has them. They are looked up by reflection so this still
+	 * compiles for and runs on older runtimes.
+	 *
+	 * @return the thread factory
+	 */
+	private static ThreadFactory taskThreads() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Virtual threads are not available, using platform threads for tasks.");
+
+			return task -> {
+				Thread thread = new Thread(null, task, "Task", STACK_SIZE);
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+	}
+
+	/**
+	 * A task that computes a result, completing its future when it is done.
+	 *
+	 * @param <T> the type of the result
+	 */
+	private static class Submitted<T> implements Runnable {
+
+		/** The task to run. */
+		private final Callable<T> task;
+
+		/** The future result of the task. */
+		private final CompletableFuture<T> future;
+
+		/**
+		 * Initializes the task.
+		 *
+		 * @param task the task to run
+		 */
+		public Submitted(Callable<T> task) {
+			this.task = task;
+			this.future = new CompletableFuture<T>();
+		}
+
+		/**
+		 * Runs the task unless its future was cancelled, and completes the future.
+		 * Exceptions are still thrown afterwards, so they are counted as failures.
+		 */
+		@Override
+		public void run() {
+			if (future.isDone()) {
+				return;
+			}
+
+			try {
+				future.complete(task.call());
+			} catch (RuntimeException | Error e) {
+				future.completeExceptionally(e);
+				throw e;
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+				throw new CompletionException(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	/**
+	 * A task along with when it was added and its priority.
+	 */
+	private static class Queued {
+
+		/** The work to run. */
+		private final Runnable work;
+
+		/** Which tasks start first when several are waiting. */
+		private final Priority priority;
+
+		/** When the task was added, from {@link System#nanoTime()}. */
+		private final long added;
+
+		/**
+		 * Initializes the task.
+		 *
+		 * @param work     the work to run
+		 * @param priority which tasks start first when several are waiting
+		 */
+		public Queued(Runnable work, Priority priority) {
+			this.work = work;
+			this.priority = priority;
+			this.added = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Tasks waiting to run, in order for each priority. Background tasks are held
+	 * back while the most allowed are running. Guarded by its own monitor.
+	 */
+	private class Lanes {
+
+		/** The tasks waiting for each priority. */
+		private final ArrayList<ArrayDeque<Queued>> lanes;
+
+		/**
+		 * Initializes empty lanes.
+		 */
+		public Lanes() {
+			this.lanes = new ArrayList<ArrayDeque<Queued>>();
+
+			for (int i = 0; i < Priority.values().length; i++) {
+				lanes.add(new ArrayDeque<Queued>());
+			}
+		}
+
+		/**
+		 * Adds a task to the end of its lane.
+		 *
+		 * @param task the task to add
+		 */
+		public void add(Queued task) {
+			lanes.get(task.priority.ordinal()).addLast(task);
+		}
+
+		/**
+		 * Returns true if no tasks are waiting
+		 *
+		 * @return boolean
+		 */
+		public boolean isEmpty() {
+			for (ArrayDeque<Queued> lane : lanes) {
+				if (!lane.isEmpty()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Removes the first task of the highest priority lane that may start now.
+		 *
+		 * @return the task, or null if there is none
+		 */
+		public Queued poll() {
+			for (ArrayDeque<Queued> lane : lanes) {
+				Queued task = lane.peekFirst();
+
+				if (task != null) {
+					boolean start = task.priority != Priority.BACKGROUND || startBackground();
+					return start ? lane.pollFirst() : null;
+				}
+			}
+			return null;
+		}
 	}
 
 	/**
@@ -167,43 +1018,149 @@ public class WorkQueue {
 	 * is requested.
 	 */
 	private class Worker extends Thread {
+
+		/** Tasks added by this worker, used by the stealing scheduler. */
+		private final ConcurrentLinkedDeque<Queued> local;
+
+		/** The position of this worker in the metrics. */
+		private final int index;
+
 		/**
 		 * Initializes a worker thread with a custom name.
+		 *
+		 * @param index the position of this worker in the metrics
 		 */
-		public Worker() {
+		public Worker(int index) {
 			setName("Worker" + getName());
+			this.local = new ConcurrentLinkedDeque<Queued>();
+			this.index = index;
+		}
+
+		/**
+		 * Returns the work queue this worker belongs to.
+		 *
+		 * @return the work queue
+		 */
+		private WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
+		/**
+		 * Waits for the next task from the shared queue.
+		 *
+		 * @return the task, or null if shutdown has been called
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		private Queued takeShared() throws InterruptedException {
+			synchronized (tasks) {
+				Queued task = null;
+
+				while (!shutdown && (task = tasks.poll()) == null) {
+					tasks.wait();
+				}
+
+				// exit while for one of two reasons:
+				// (a) queue has work, or (b) shutdown has been called
+				if (shutdown && task != null) {
+					finished(task);
+					return null;
+				}
+
+				return task;
+			}
+		}
+
+		/**
+		 * Waits for the next task this worker added, was added from outside the
+		 * workers, or can be stolen from another worker.
+		 *
+		 * @return the task, or null if shutdown has been called
+		 */
+		private Queued takeStealing() {
+			while (!shutdown) {
+				Queued task = find();
+
+				// new tasks often follow quickly, so look a few more times before waiting
+				for (int i = 0; i < SPINS && task == null; i++) {
+					Thread.onSpinWait();
+					task = find();
+				}
+
+				if (task != null) {
+					return task;
+				}
+
+				// look once more after being listed as idle, so a task added in between
+				// is either found here or wakes this worker up
+				idle.push(this);
+				task = find();
+
+				if (task != null) {
+					idle.remove(this);
+					return task;
+				}
+
+				if (!shutdown) {
+					LockSupport.park(this);
+				}
+				idle.remove(this);
+			}
+
+			return null;
+		}
+
+		/**
+		 * Finds a task without waiting.
+		 *
+		 * @return the task, or null if there is none
+		 */
+		private Queued find() {
+			Queued task = urgent.poll();
+
+			if (task == null) {
+				task = local.pollFirst();
+			}
+
+			if (task == null) {
+				task = submitted.poll();
+			}
+
+			if (task == null) {
+				int start = ThreadLocalRandom.current().nextInt(workers.length);
+				for (int i = 0; i < workers.length && task == null; i++) {
+					Worker other = workers[(start + i) % workers.length];
+					if (other != this) {
+						task = other.local.pollLast();
+					}
+				}
+			}
+
+			if (task == null && !background.isEmpty() && startBackground()) {
+				task = background.poll();
+
+				if (task == null) {
+					backgroundRunning.decrementAndGet();
+				}
+			}
+
+			return task;
 		}
 
 		@Override
 		public void run() {
-			Runnable task = null;
+			Queued task = null;
+			OWNER.set(WorkQueue.this);
 
 			try {
 				while (true) {
-					synchronized (tasks) {
-						while (tasks.isEmpty() && !shutdown) {
-							tasks.wait();
-						}
-
-						// exit while for one of two reasons:
-						// (a) queue has work, or (b) shutdown has been called
-
-						if (shutdown) {
-							break;
-						} else {
-							task = tasks.removeFirst();
-						}
-					}
+					task = scheduler == Scheduler.SHARED ? takeShared() : takeStealing();
 
-					try {
-						log.trace("Work queue worker found work.");
-						task.run();
-					} catch (RuntimeException e) {
-						// catch runtime exceptions to avoid leaking threads
-						log.catching(Level.DEBUG, e);
+					if (task == null) {
+						break;
 					}
-					decrementPending();
-				} // use decrememnt after task is completed but is inside while loop
+
+					WorkQueue.this.run(task, index);
+				}
 			} catch (InterruptedException e) {
 				log.catching(Level.DEBUG, e);
 				Thread.currentThread().interrupt();
@@ -0,0 +1,428 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how busy a {@link WorkQueue} is: how many tasks are waiting, how long
+ * each task waited to start and took to run, how much of the time each worker
+ * spent running tasks, and how many tasks failed with an exception.
+ *
+ * Recording only adds to counters that threads do not contend for, so it is
+ * cheap enough to always be on. The values are read while tasks are still
+ * running, so they may be slightly behind each other.
+ *
+ * @author Ramneet Kaur CS 272 Software Development (University of San
+ *         Francisco)
+ * @version Fall 2021
+ */
+public class WorkQueueMetrics {
+
+	/**
+	 * Counts durations in buckets that double in size, so percentiles can be
+	 * estimated without keeping every duration.
+	 */
+	public static class Histogram {
+
+		/** The number of buckets, enough for any duration in nanoseconds. */
+		private static final int BUCKETS = 64;
+
+		/** The number of durations in each bucket. */
+		private final LongAdder[] counts;
+
+		/** The sum of all durations in nanoseconds. */
+		private final LongAdder total;
+
+		/** The longest duration in nanoseconds. */
+		private final AtomicLong max;
+
+		/**
+		 * Initializes an empty histogram.
+		 */
+		public Histogram() {
+			this.counts = new LongAdder[BUCKETS];
+			this.total = new LongAdder();
+			this.max = new AtomicLong();
+
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Records a duration. Bucket i holds durations shorter than 2^i nanoseconds
+		 * and at least half as long.
+		 *
+		 * @param nanos the duration in nanoseconds
+		 */
+		public void record(long nanos) {
+			nanos = Math.max(nanos, 0);
+			counts[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+			total.add(nanos);
+
+			if (nanos > max.get()) {
+				max.accumulateAndGet(nanos, Math::max);
+			}
+		}
+
+		/**
+		 * Returns the number of durations recorded
+		 *
+		 * @return long
+		 */
+		public long count() {
+			long count = 0;
+			for (LongAdder bucket : counts) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the mean duration in nanoseconds, or 0 if none were recorded
+		 *
+		 * @return long
+		 */
+		public long mean() {
+			long count = count();
+			return count == 0 ? 0 : total.sum() / count;
+		}
+
+		/**
+		 * Returns the longest duration in nanoseconds
+		 *
+		 * @return long
+		 */
+		public long max() {
+			return max.get();
+		}
+
+		/**
+		 * Estimates the duration that the fraction of durations are shorter than, as
+		 * the end of the bucket it falls in.
+		 *
+		 * @param fraction the fraction of durations, such as 0.99
+		 * @return the duration in nanoseconds, or 0 if none were recorded
+		 */
+		public long percentile(double fraction) {
+			long[] sums = new long[BUCKETS];
+			long count = 0;
+
+			for (int i = 0; i < BUCKETS; i++) {
+				sums[i] = counts[i].sum();
+				count += sums[i];
+			}
+
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += sums[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i, max());
+				}
+			}
+
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("mean %s p50 %s p90 %s p99 %s max %s", format(mean()), format(percentile(0.5)),
+					format(percentile(0.9)), format(percentile(0.99)), format(max()));
+		}
+	}
+
+	/** When recording started. */
+	private final long created;
+
+	/** The number of tasks added. */
+	private final LongAdder submitted;
+
+	/** The number of tasks started. */
+	private final LongAdder started;
+
+	/** The number of tasks finished, including those that failed. */
+	private final LongAdder completed;
+
+	/** The number of tasks that threw an exception or error. */
+	private final LongAdder failed;
+
+	/** The number of tasks rejected because the work queue was full. */
+	private final LongAdder rejected;
+
+	/** The most tasks added and not finished at once since the last report. */
+	private final AtomicLong peak;
+
+	/** How long tasks waited from being added until they started. */
+	private final Histogram waits;
+
+	/** How long tasks took to run. */
+	private final Histogram runs;
+
+	/** How long each worker spent running tasks, in nanoseconds. */
+	private final LongAdder[] busy;
+
+	/** How many tasks each busy time is shared by at most. */
+	private final int capacity;
+
+	/** When the last report was made. */
+	private long reported;
+
+	/** The busy time of each worker at the last report. */
+	private final long[] reportedBusy;
+
+	/**
+	 * Initializes the metrics.
+	 *
+	 * @param workers  the number of workers, each with its own busy time
+	 * @param capacity how many tasks each busy time is shared by at most, which is
+	 *                 1 for workers
+	 */
+	public WorkQueueMetrics(int workers, int capacity) {
+		this.created = System.nanoTime();
+		this.submitted = new LongAdder();
+		this.started = new LongAdder();
+		this.completed = new LongAdder();
+		this.failed = new LongAdder();
+		this.rejected = new LongAdder();
+		this.peak = new AtomicLong();
+		this.waits = new Histogram();
+		this.runs = new Histogram();
+		this.busy = new LongAdder[workers];
+		this.capacity = capacity;
+		this.reported = created;
+		this.reportedBusy = new long[workers];
+
+		for (int i = 0; i < workers; i++) {
+			busy[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a task being added.
+	 *
+	 * @param pending the number of tasks added and not finished, including this one
+	 */
+	void submitted(int pending) {
+		submitted.increment();
+
+		if (pending > peak.get()) {
+			peak.accumulateAndGet(pending, Math::max);
+		}
+	}
+
+	/**
+	 * Records a task starting.
+	 *
+	 * @param waited how long the task waited to start in nanoseconds
+	 */
+	void started(long waited) {
+		started.increment();
+		waits.record(waited);
+	}
+
+	/**
+	 * Records a task finishing.
+	 *
+	 * @param worker the worker that ran the task, or -1 if not one of the workers
+	 * @param ran    how long the task took to run in nanoseconds
+	 * @param threw  whether the task threw an exception or error
+	 */
+	void finished(int worker, long ran, boolean threw) {
+		runs.record(ran);
+
+		if (worker >= 0) {
+			busy[worker].add(ran);
+		}
+
+		if (threw) {
+			failed.increment();
+		}
+
+		completed.increment();
+	}
+
+	/**
+	 * Records a task rejected because the work queue was full.
+	 */
+	void rejectedTask() {
+		rejected.increment();
+	}
+
+	/**
+	 * Returns the number of tasks added
+	 *
+	 * @return long
+	 */
+	public long submitted() {
+		return submitted.sum();
+	}
+
+	/**
+	 * Returns the number of tasks finished, including those that failed
+	 *
+	 * @return long
+	 */
+	public long completed() {
+		return completed.sum();
+	}
+
+	/**
+	 * Returns the number of tasks that threw an exception or error
+	 *
+	 * @return long
+	 */
+	public long failed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Returns the number of tasks rejected because the work queue was full
+	 *
+	 * @return long
+	 */
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Returns the number of tasks added that have not started yet
+	 *
+	 * @return long
+	 */
+	public long queued() {
+		// read started first so a task starting in between is not counted twice
+		long started = this.started.sum();
+		return Math.max(0, submitted.sum() - started);
+	}
+
+	/**
+	 * Returns the number of tasks added that are not finished
+	 *
+	 * @return long
+	 */
+	public long pending() {
+		long completed = this.completed.sum();
+		return Math.max(0, submitted.sum() - completed);
+	}
+
+	/**
+	 * Returns the number of tasks running
+	 *
+	 * @return long
+	 */
+	public long running() {
+		long completed = this.completed.sum();
+		return Math.max(0, started.sum() - completed);
+	}
+
+	/**
+	 * Returns how long tasks waited from being added until they started
+	 *
+	 * @return the histogram in nanoseconds
+	 */
+	public Histogram waits() {
+		return waits;
+	}
+
+	/**
+	 * Returns how long tasks took to run
+	 *
+	 * @return the histogram in nanoseconds
+	 */
+	public Histogram runs() {
+		return runs;
+	}
+
+	/**
+	 * Returns the fraction of the time since recording started that each worker
+	 * spent running tasks.
+	 *
+	 * @return the busy ratio of each worker, between 0 and 1
+	 */
+	public double[] busy() {
+		long elapsed = System.nanoTime() - created;
+		double[] ratios = new double[busy.length];
+
+		for (int i = 0; i < busy.length; i++) {
+			ratios[i] = ratio(busy[i].sum(), elapsed);
+		}
+
+		return ratios;
+	}
+
+	/**
+	 * Describes the metrics in one line. The counts and durations are since
+	 * recording started, but the busy ratio of each worker and the peak number of
+	 * pending tasks are since the last report, so periodic reports show how they
+	 * change over time.
+	 *
+	 * @return the report
+	 */
+	public synchronized String report() {
+		long now = System.nanoTime();
+		long elapsed = now - reported;
+		reported = now;
+
+		StringBuilder workers = new StringBuilder();
+		long busyTotal = 0;
+
+		for (int i = 0; i < busy.length; i++) {
+			long sum = busy[i].sum();
+			long delta = sum - reportedBusy[i];
+			reportedBusy[i] = sum;
+			busyTotal += delta;
+
+			if (busy.length > 1) {
+				workers.append(i == 0 ? " [" : " ").append(percent(ratio(delta, elapsed)));
+			}
+		}
+
+		if (busy.length > 1) {
+			workers.append(']');
+		}
+
+		return String.format("%d queued, %d running, %d pending at most; %d added, %d done, %d failed, "
+				+ "%d rejected; wait %s; run %s; busy %s%s", queued(), running(), peak.getAndSet(pending()), submitted(),
+				completed(), failed(), rejected(),
+				waits, runs, percent(ratio(busyTotal, elapsed * Math.max(busy.length, 1))), workers);
+	}
+
+	/**
+	 * Returns the fraction of the elapsed time spent busy, shared by up to the
+	 * capacity of tasks.
+	 *
+	 * @param busy    the busy time in nanoseconds
+	 * @param elapsed the elapsed time in nanoseconds
+	 * @return the ratio between 0 and 1
+	 */
+	private double ratio(long busy, long elapsed) {
+		return elapsed <= 0 ? 0 : Math.min(1, (double) busy / elapsed / capacity);
+	}
+
+	/**
+	 * Formats a ratio as a percent.
+	 *
+	 * @param ratio the ratio between 0 and 1
+	 * @return the formatted percent
+	 */
+	private static String percent(double ratio) {
+		return Math.round(ratio * 100) + "%";
+	}
+
+	/**
+	 * Formats a duration in the largest unit that keeps it above 1.
+	 *
+	 * @param nanos the duration in nanoseconds
+	 * @return the formatted duration
+	 */
+	private static String format(long nanos) {
+		if (nanos >= TimeUnit.SECONDS.toNanos(1)) {
+			return String.format("%.1fs", nanos / 1e9);
+		} else if (nanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+			return String.format("%.1fms", nanos / 1e6);
+		} else {
+			return String.format("%.1fus", nanos / 1e3);
+		}
+	}
+}